@@ -0,0 +1,275 @@
+/*************************************************************************
+ * Dependencies: Point.java, PointFile.java, StdDraw.java
+ *
+ * Description: Draws every line segment that connects 4 or more points
+ * that are collinear up to a tolerance, for noisy coordinates where the
+ * exact slope comparisons of Brute and Fast miss real lines.
+ *
+ * The tolerance is given in coordinate units and turned into an angular
+ * epsilon per point: a point at distance d from the origin may be off by
+ * tolerance / d radians, so far points are not matched more loosely than
+ * near ones. For each origin the directions to all other points are
+ * folded into [0, pi), sorted, and chained into groups whose neighbouring
+ * angles are within their combined epsilons (wrapping around at pi).
+ * Chaining can bridge a wide fan of directions, so a line is then fitted
+ * to each group and its origin (total least squares), and the point
+ * farthest from it is dropped, and the line refitted, until every point is
+ * within tolerance of the line. A group still of 4 or more points is
+ * reported from the origin that is smallest in natural order, as in Fast.
+ * Memory is linear per origin and origins are processed in parallel
+ * blocks.
+ *
+ * Usage: java ApproxCollinear input.txt [tolerance]
+ *
+ *************************************************************************/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ApproxCollinear {
+
+    private static final double DEFAULT_TOLERANCE = 1.0;
+    private static final int BLOCK = 64;       // origins per task
+
+    private final Point[] pts;
+    private final double tolerance;
+
+    // find the segments of the points, allowing each point to be up to
+    // tolerance away from the line
+    public ApproxCollinear(Point[] pts, double tolerance) {
+        if (tolerance < 0)
+            throw new IllegalArgumentException("Negative tolerance");
+        this.pts = pts;
+        this.tolerance = tolerance;
+    }
+
+    // all segments, each in natural order, using every available core
+    public List<Point[]> segments() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Point[]>>> blocks =
+                    new ArrayList<Future<List<Point[]>>>();
+            for (int lo = 0; lo < pts.length; lo += BLOCK) {
+                final int from = lo;
+                final int to = Math.min(pts.length, lo + BLOCK);
+                blocks.add(pool.submit(new Callable<List<Point[]>>() {
+                    public List<Point[]> call() {
+                        return segments(from, to);
+                    }
+                }));
+            }
+            List<Point[]> all = new ArrayList<Point[]>();
+            for (Future<List<Point[]>> block : blocks)
+                all.addAll(block.get());
+            return all;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // segments reported by origins from (inclusive) to to (exclusive)
+    private List<Point[]> segments(int from, int to) {
+        List<Point[]> found = new ArrayList<Point[]>();
+        double[] angles = new double[pts.length];
+        double[] eps = new double[pts.length];
+        int[] other = new int[pts.length];
+
+        for (int o = from; o < to; o++) {
+            Point origin = pts[o];
+            int m = 0;
+            for (int i = 0; i < pts.length; i++) {
+                if (i == o) continue;
+                double a = Math.atan2(pts[i].y() - origin.y(),
+                                      pts[i].x() - origin.x());
+                if (a < 0) a += Math.PI;
+                if (a >= Math.PI) a -= Math.PI;
+                angles[m] = a;
+                other[m++] = i;
+            }
+            if (m < 3) continue;
+            sort(angles, other, 0, m-1);
+            for (int t = 0; t < m; t++) {
+                Point q = pts[other[t]];
+                double dx = q.x() - origin.x();
+                double dy = q.y() - origin.y();
+                eps[t] = tolerance / Math.sqrt(dx*dx + dy*dy);
+            }
+
+            // start the chains just after a gap wider than the tolerance
+            int start = -1;
+            for (int t = 0; t < m && start < 0; t++)
+                if (isGap(angles, eps, m, t))
+                    start = t;
+            if (start < 0) {
+                report(origin, other, 0, m, found);
+                continue;
+            }
+            int groupStart = start;
+            int len = 0;
+            for (int k = 0; k < m; k++) {
+                int t = (start + k) % m;
+                if (len > 0 && isGap(angles, eps, m, t)) {
+                    report(origin, other, groupStart, len, found);
+                    groupStart = t;
+                    len = 0;
+                }
+                len++;
+            }
+            report(origin, other, groupStart, len, found);
+        }
+        return found;
+    }
+
+    // are sorted entry t and the one before it (cyclically) too far apart
+    // in angle to be on the same line?
+    private static boolean isGap(double[] angles, double[] eps, int m, int t) {
+        if (t == 0)
+            return angles[0] + Math.PI - angles[m-1] > eps[0] + eps[m-1];
+        return angles[t] - angles[t-1] > eps[t] + eps[t-1];
+    }
+
+    // add the segment made by origin and count points starting at (cyclic)
+    // position first, less the points too far from their fitted line, if
+    // it has 4+ points and origin is still its smallest one
+    private void report(Point origin, int[] other, int first, int count,
+                        List<Point[]> found) {
+        if (count < 3) return;
+        int m = pts.length - 1;
+        Point[] seg = new Point[count + 1];
+        seg[0] = origin;
+        for (int k = 0; k < count; k++)
+            seg[k+1] = pts[other[(first + k) % m]];
+        int n = fit(seg, count + 1);
+        if (n < 4) return;
+        // a group without origin, or with a smaller point, is left to
+        // another origin
+        boolean hasOrigin = false;
+        for (int k = 0; k < n; k++) {
+            if (seg[k] == origin)                 hasOrigin = true;
+            else if (seg[k].compareTo(origin) < 0) return;
+        }
+        if (!hasOrigin) return;
+        seg = Arrays.copyOf(seg, n);
+        Arrays.sort(seg);
+        found.add(seg);
+    }
+
+    // drop the point of seg[0..n) farthest from the line fitted to them
+    // (total least squares) until all are within tolerance of it or fewer
+    // than 4 are left; returns the number kept, moved to the front
+    private int fit(Point[] seg, int n) {
+        while (n >= 4) {
+            double cx = 0, cy = 0;
+            for (int k = 0; k < n; k++) {
+                cx += seg[k].x();
+                cy += seg[k].y();
+            }
+            cx /= n;
+            cy /= n;
+            double sxx = 0, syy = 0, sxy = 0;
+            for (int k = 0; k < n; k++) {
+                double dx = seg[k].x() - cx, dy = seg[k].y() - cy;
+                sxx += dx*dx;
+                syy += dy*dy;
+                sxy += dx*dy;
+            }
+            // the line runs along the principal axis; (nx, ny) is normal
+            double theta = 0.5 * Math.atan2(2*sxy, sxx - syy);
+            double nx = -Math.sin(theta), ny = Math.cos(theta);
+            int worst = 0;
+            double worstDist = -1;
+            for (int k = 0; k < n; k++) {
+                double d = Math.abs((seg[k].x() - cx) * nx
+                                    + (seg[k].y() - cy) * ny);
+                if (d > worstDist) {
+                    worst = k;
+                    worstDist = d;
+                }
+            }
+            if (worstDist <= tolerance)
+                break;
+            Point t = seg[worst];
+            seg[worst] = seg[n-1];
+            seg[n-1] = t;
+            n--;
+        }
+        return n;
+    }
+
+    // sort keys[lo..hi] ascending, permuting vals alongside
+    private static void sort(double[] keys, int[] vals, int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = keys[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) swap(keys, vals, i++, j--);
+            }
+            // recurse into the smaller half, loop on the larger one
+            if (j - lo < hi - i) {
+                sort(keys, vals, lo, j);
+                lo = i;
+            } else {
+                sort(keys, vals, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++)
+            for (int j = i; j > lo && keys[j] < keys[j-1]; j--)
+                swap(keys, vals, j, j-1);
+    }
+
+    private static void swap(double[] keys, int[] vals, int i, int j) {
+        double k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+        int v = vals[i];
+        vals[i] = vals[j];
+        vals[j] = v;
+    }
+
+    public static void main(String[] args) {
+
+        // rescale coordinates and turn on animation mode
+        StdDraw.setXscale(0, 32768);
+        StdDraw.setYscale(0, 32768);
+        StdDraw.setPenRadius(0.01);
+
+        // read in the input
+        Point[] pts = PointFile.readPoints(args[0]);
+        double tolerance = DEFAULT_TOLERANCE;
+        if (args.length > 1)
+            tolerance = Double.parseDouble(args[1]);
+        for (int i = 0; i < pts.length; i++)
+            pts[i].draw();
+
+        // draw line through any 4 approximately collinear points
+        StdDraw.setPenRadius(0.001);
+        for (Point[] seg : new ApproxCollinear(pts, tolerance).segments()) {
+            for (int i = 0; i < seg.length-1; i++)
+                System.out.print(seg[i].toString() + " -> ");
+            System.out.println(seg[seg.length-1].toString());
+            seg[0].drawTo(seg[seg.length-1]);
+        }
+
+        // display to screen all at once
+        StdDraw.show(0);
+
+        // reset the pen radius
+        StdDraw.setPenRadius();
+    }
+}
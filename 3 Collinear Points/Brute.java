@@ -1,13 +1,26 @@
-/* 
+/*
  * Draws every (maximal) line segment that connects a subset of 4 or more,
  * points, given a set of N distinct points in the plane. Uses brute force.
+ *
+ * The points are sorted and their coordinates copied into primitive
+ * arrays. For each pair i < j the remaining points are tested with integer
+ * cross products (in int arithmetic when the coordinate span allows, which
+ * vectorizes better than long, else exactly in 128 bits): the pair is
+ * dropped as soon as a point before j is on its line (then i, j are not
+ * the two smallest points of a maximal segment), otherwise every later
+ * point on the line is collected.
+ * This is O(N^3) with simple inner loops over int[] arrays, fast enough
+ * to validate Fast on a few thousand points.
  */
 import java.util.Arrays;
 
 public class Brute {
-    
+
+    // coordinate span is small enough for cross products to fit in an int
+    private static boolean small;
+
     public static void main(String[] args) {
-        
+
         Point[] pts;
 
         // rescale coordinates and turn on animation mode
@@ -15,30 +28,40 @@ public class Brute {
         StdDraw.setYscale(0, 32768);
         StdDraw.setPenRadius(0.01);
 
-        // read in the input
+        // read in the input (text or binary, see PointFile)
         String filename = args[0];
-        In in = new In(filename);
-        pts = new Point[in.readInt()];
-        for (int i = 0; i < pts.length; i++) {
-            int x = in.readInt();
-            int y = in.readInt();
-            pts[i] = new Point(x, y);
+        pts = PointFile.readPoints(filename);
+        for (int i = 0; i < pts.length; i++)
             pts[i].draw();
-        }
-        
-        // draw line through any 4 collinear points
+
+        // sort points by natural order and copy out the coordinates
         Arrays.sort(pts);
+        int n = pts.length;
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = pts[i].x();
+            ys[i] = pts[i].y();
+        }
+        int[] line = new int[n];
+        small = fitsInt(xs, ys);
+
+        // draw line through any 4 or more collinear points
         StdDraw.setPenRadius(0.001);
-        for (int i = 0; i < pts.length; i++)
-            for (int j = i+1; j < pts.length; j++)
-                for (int k = j+1; k < pts.length; k++)
-                    for (int l = k+1; l < pts.length; l++)
-                        if (areInLine(pts[i], pts[j], pts[k], pts[l])) {
-                                pts[i].drawTo(pts[l]);
-                                System.out.print(pts[i].toString() + " -> ");
-                                System.out.print(pts[j].toString() + " -> ");
-                                System.out.print(pts[k].toString() + " -> ");
-                                System.out.println(pts[l].toString());                        }
+        for (int i = 0; i < n; i++)
+            for (int j = i+1; j < n; j++) {
+                if (!startsSegment(xs, ys, i, j))
+                    continue;
+                int count = collect(xs, ys, i, j, line);
+                if (count < 2)
+                    continue;
+                System.out.print(pts[i].toString() + " -> ");
+                System.out.print(pts[j].toString());
+                for (int k = 0; k < count; k++)
+                    System.out.print(" -> " + pts[line[k]].toString());
+                System.out.println();
+                pts[i].drawTo(pts[line[count-1]]);
+            }
 
         // display to screen all at once
         StdDraw.show(0);
@@ -47,9 +70,77 @@ public class Brute {
         StdDraw.setPenRadius();
     }
 
-    private static boolean areInLine(Point p, Point q, Point r, Point s) {
-        if (p.slopeTo(q) == q.slopeTo(r) && p.slopeTo(q) == r.slopeTo(s))
-            return true;
+    // are i and j the two smallest points on their line, i.e. is no other
+    // point before j on it?
+    private static boolean startsSegment(int[] xs, int[] ys, int i, int j) {
+        return !onLine(xs, ys, i, j, 0, i) && !onLine(xs, ys, i, j, i+1, j);
+    }
+
+    // is any point in [lo, hi) on the line through i and j?
+    private static boolean onLine(int[] xs, int[] ys, int i, int j,
+                                  int lo, int hi) {
+        int xi = xs[i];
+        int yi = ys[i];
+        if (small) {
+            int dx = xs[j] - xi;
+            int dy = ys[j] - yi;
+            for (int k = lo; k < hi; k++)
+                if (dx * (ys[k] - yi) == dy * (xs[k] - xi))
+                    return true;
+        } else {
+            long dx = (long) xs[j] - xi;
+            long dy = (long) ys[j] - yi;
+            for (int k = lo; k < hi; k++)
+                if (sameProduct(dx, (long) ys[k] - yi, dy, (long) xs[k] - xi))
+                    return true;
+        }
         return false;
     }
+
+    // store the points after j on the line through i and j in line[],
+    // in order, and return how many there are
+    private static int collect(int[] xs, int[] ys, int i, int j, int[] line) {
+        int xi = xs[i];
+        int yi = ys[i];
+        int count = 0;
+        if (small) {
+            int dx = xs[j] - xi;
+            int dy = ys[j] - yi;
+            for (int k = j+1; k < xs.length; k++)
+                if (dx * (ys[k] - yi) == dy * (xs[k] - xi))
+                    line[count++] = k;
+        } else {
+            long dx = (long) xs[j] - xi;
+            long dy = (long) ys[j] - yi;
+            for (int k = j+1; k < xs.length; k++)
+                if (sameProduct(dx, (long) ys[k] - yi, dy, (long) xs[k] - xi))
+                    line[count++] = k;
+        }
+        return count;
+    }
+
+    // is a*b == c*d? Differences of int coordinates can reach 2^32, so the
+    // products can overflow a long; compare their high 64 bits too
+    private static boolean sameProduct(long a, long b, long c, long d) {
+        return a * b == c * d
+            && Math.multiplyHigh(a, b) == Math.multiplyHigh(c, d);
+    }
+
+    // can every cross product be computed in int without overflow?
+    private static boolean fitsInt(int[] xs, int[] ys) {
+        long span = 0;
+        if (xs.length > 0) {
+            int xmin = xs[0], xmax = xs[0], ymin = ys[0], ymax = ys[0];
+            for (int i = 1; i < xs.length; i++) {
+                xmin = Math.min(xmin, xs[i]);
+                xmax = Math.max(xmax, xs[i]);
+                ymin = Math.min(ymin, ys[i]);
+                ymax = Math.max(ymax, ys[i]);
+            }
+            span = Math.max((long) xmax - xmin, (long) ymax - ymin);
+        }
+        // both products in a cross product are at most span^2 (which
+        // overflows a long itself for spans near 2^32)
+        return span < 1L << 31 && span * span <= Integer.MAX_VALUE;
+    }
 }
@@ -0,0 +1,166 @@
+/*************************************************************************
+ * Dependencies: Point.java, PointFile.java, StdDraw.java
+ *
+ * Description: An incremental index of the (maximal) line segments that
+ * connect 4 or more points. Inserting a point only looks at the slopes
+ * from the new point to the points already in the index: they are
+ * bucketed by reduced direction, and every bucket holding 3 or more
+ * points either extends an existing segment or creates a new one. An
+ * insert costs O(N) expected time instead of rerunning Fast from scratch.
+ *
+ *************************************************************************/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CollinearIndex {
+
+    private final List<Point> points = new ArrayList<Point>();
+
+    // every line through 4 or more points, with the points on it
+    private final Map<Line, List<Point>> segments =
+            new HashMap<Line, List<Point>>();
+
+    // number of points in the index
+    public int size() {
+        return points.size();
+    }
+
+    // number of maximal segments found so far
+    public int numberOfSegments() {
+        return segments.size();
+    }
+
+    // add the point, extending or creating the segments through it; the
+    // points must be distinct
+    public void insert(Point p) {
+        if (p == null)
+            throw new java.lang.NullPointerException("Point object is null");
+
+        // slope buckets from p to every point already in the index
+        Map<Long, List<Point>> buckets = new HashMap<Long, List<Point>>();
+        for (Point q : points) {
+            if (p.compareTo(q) == 0)
+                throw new IllegalArgumentException("Repeated point " + p);
+            long dir = direction(p, q);
+            List<Point> bucket = buckets.get(dir);
+            if (bucket == null) {
+                bucket = new ArrayList<Point>(2);
+                buckets.put(dir, bucket);
+            }
+            bucket.add(q);
+        }
+        points.add(p);
+
+        for (Map.Entry<Long, List<Point>> e : buckets.entrySet()) {
+            List<Point> bucket = e.getValue();
+            if (bucket.size() < 3)
+                continue;
+            Line line = new Line(e.getKey(), p);
+            List<Point> seg = segments.get(line);
+            if (seg == null) {
+                seg = new ArrayList<Point>(bucket);
+                segments.put(line, seg);
+            }
+            seg.add(p);
+        }
+    }
+
+    // snapshot of the current maximal segments, each in natural order
+    public Iterable<Point[]> segments() {
+        List<Point[]> snapshot = new ArrayList<Point[]>(segments.size());
+        for (List<Point> seg : segments.values()) {
+            Point[] a = seg.toArray(new Point[seg.size()]);
+            Arrays.sort(a);
+            snapshot.add(a);
+        }
+        return snapshot;
+    }
+
+    // direction from p to q reduced by the gcd, with a canonical sign,
+    // packed as dx in the high and dy in the low 32 bits
+    private static long direction(Point p, Point q) {
+        int dx = q.x() - p.x();
+        int dy = q.y() - p.y();
+        int g = gcd(Math.abs(dx), Math.abs(dy));
+        if (g != 0) {
+            dx /= g;
+            dy /= g;
+        }
+        if (dx < 0 || (dx == 0 && dy < 0)) {
+            dx = -dx;
+            dy = -dy;
+        }
+        return ((long) dx << 32) | (dy & 0xffffffffL);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    // a line given by its reduced direction and its offset dy*x - dx*y,
+    // which is the same for every point on it
+    private static class Line {
+
+        private final long dir;
+        private final long offset;
+
+        public Line(long dir, Point p) {
+            long dx = dir >> 32;
+            long dy = (int) dir;
+            this.dir = dir;
+            this.offset = dy * p.x() - dx * p.y();
+        }
+
+        @Override
+        public boolean equals(Object y) {
+            if (y == this)
+                return true;
+            if (y == null || y.getClass() != this.getClass())
+                return false;
+            Line that = (Line) y;
+            return this.dir == that.dir && this.offset == that.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = dir * 31 + offset;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    // insert the points of a file one at a time and draw the segments
+    public static void main(String[] args) {
+        StdDraw.setXscale(0, 32768);
+        StdDraw.setYscale(0, 32768);
+        StdDraw.setPenRadius(0.01);
+
+        CollinearIndex index = new CollinearIndex();
+        for (Point p : PointFile.readPoints(args[0])) {
+            p.draw();
+            index.insert(p);
+        }
+
+        StdDraw.setPenRadius(0.001);
+        for (Point[] seg : index.segments()) {
+            for (int i = 0; i < seg.length-1; i++)
+                System.out.print(seg[i].toString() + " -> ");
+            System.out.println(seg[seg.length-1].toString());
+            seg[0].drawTo(seg[seg.length-1]);
+        }
+
+        // display to screen all at once
+        StdDraw.show(0);
+
+        // reset the pen radius
+        StdDraw.setPenRadius();
+    }
+}
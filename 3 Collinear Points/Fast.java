@@ -17,16 +17,11 @@ public class Fast {
         StdDraw.setYscale(0, 32768);
         StdDraw.setPenRadius(0.01);
         
-        // read in the input
+        // read in the input (text or binary, see PointFile)
         String filename = args[0];
-        In in = new In(filename);
-        pts = new Point[in.readInt()];
-        for (int i = 0; i < pts.length; i++) {
-            int x = in.readInt();
-            int y = in.readInt();
-            pts[i] = new Point(x, y);
+        pts = PointFile.readPoints(filename);
+        for (int i = 0; i < pts.length; i++)
             pts[i].draw();
-        }
         
         // sort points by natural order and create duplicate array
         Arrays.sort(pts);
@@ -0,0 +1,296 @@
+/*************************************************************************
+ * Dependencies: PointFile.java
+ *
+ * Description: Prints every (maximal) line segment that connects 4 or
+ * more points, for point sets too large to hold as Point objects on the
+ * heap. Same output as Fast, without drawing.
+ *
+ * The input must be a binary point file (see PointFile). Its coordinate
+ * arrays stay memory-mapped and are read in place. Origins are processed
+ * in blocks on a thread pool; each worker keeps one double[N] of slopes as
+ * scratch (8 bytes per point instead of two Point[] copies). That scratch
+ * is the one part that is not out of core: the heap needs O(N) per worker,
+ * so only as many workers run as have their scratch fit in half the heap.
+ * Per origin the slopes are sorted to find runs of 3+ equal slopes, then a
+ * second pass collects the points of each run; a run is kept only if the
+ * origin is its smallest point, as in Fast. Each block task writes its
+ * segments to its own spill file, and a final pass merges the spill files
+ * in origin order, deleting each one once it is printed.
+ *
+ * Usage: java OutOfCoreFast input.bin [origins per block]
+ *
+ *************************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class OutOfCoreFast {
+
+    private static final int DEFAULT_BLOCK = 1024;
+    private static final int SHIFT = 28;            // ints per mapping
+    private static final int MASK = (1 << SHIFT) - 1;
+
+    private final int n;
+    private final IntBuffer[] xs;
+    private final IntBuffer[] ys;
+
+    // map the coordinate arrays of a binary point file
+    public OutOfCoreFast(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel ch = file.getChannel();
+            MappedByteBuffer header =
+                    ch.map(FileChannel.MapMode.READ_ONLY, 0, 12);
+            if (header.getInt() != PointFile.MAGIC)
+                throw new IllegalArgumentException(filename + " is not a "
+                        + "binary point file, convert it with PointFile");
+            if (header.getInt() != PointFile.TYPE_INT)
+                throw new IllegalArgumentException("Collinear points need "
+                        + "integer coordinates");
+            n = header.getInt();
+            if (n < 0 || ch.size() < 12 + 8L * n)
+                throw new IllegalArgumentException("Truncated point file");
+            xs = map(ch, 12);
+            ys = map(ch, 12 + 4L * n);
+        } finally {
+            file.close();      // mappings stay valid after the close
+        }
+    }
+
+    private IntBuffer[] map(FileChannel ch, long pos) throws IOException {
+        int chunks = (int) ((n + (long) MASK) >>> SHIFT);
+        IntBuffer[] buf = new IntBuffer[chunks];
+        for (int c = 0; c < chunks; c++) {
+            long first = (long) c << SHIFT;
+            long count = Math.min(n - first, 1L << SHIFT);
+            buf[c] = ch.map(FileChannel.MapMode.READ_ONLY, pos + 4 * first,
+                            4 * count).asIntBuffer();
+        }
+        return buf;
+    }
+
+    private int x(int i) {
+        return xs[i >>> SHIFT].get(i & MASK);
+    }
+
+    private int y(int i) {
+        return ys[i >>> SHIFT].get(i & MASK);
+    }
+
+    // slope from i to j, as Point.slopeTo but without -0.0, which would
+    // sort and search apart from 0.0
+    private double slope(int i, int j) {
+        int dx = x(j) - x(i);
+        int dy = y(j) - y(i);
+        if (dx == 0 && dy == 0) return Double.NEGATIVE_INFINITY;
+        if (dx == 0)            return Double.POSITIVE_INFINITY;
+        if (dy == 0)            return 0.0;
+        return (double) dy / (double) dx;
+    }
+
+    // is point i smaller than point j in natural (y, then x) order?
+    private boolean less(int i, int j) {
+        int yi = y(i), yj = y(j);
+        return yi < yj || (yi == yj && x(i) < x(j));
+    }
+
+    // find the segments block by block, spilling to files in tmpDir, then
+    // merge the spill files to out; the spill files get unique names, so
+    // runs can share tmpDir, and are deleted even if the run fails
+    public void run(int block, final File tmpDir, java.io.PrintStream out)
+            throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads());
+        final ThreadLocal<double[]> scratch = new ThreadLocal<double[]>() {
+            protected double[] initialValue() {
+                return new double[n];
+            }
+        };
+        List<Future<File>> spills = new ArrayList<Future<File>>();
+        // spill files created so far, for the ones never merged
+        final ConcurrentLinkedQueue<File> files =
+                new ConcurrentLinkedQueue<File>();
+        try {
+            for (int lo = 0; lo < n; lo += block) {
+                final int from = lo;
+                final int to = (int) Math.min(n, (long) lo + block);
+                spills.add(pool.submit(new Callable<File>() {
+                    public File call() throws IOException {
+                        File spill = File.createTempFile("segments-" + from
+                                + "-", ".spill", tmpDir);
+                        files.add(spill);
+                        boolean written = false;
+                        try {
+                            writeBlock(from, to, scratch.get(), spill);
+                            written = true;
+                        } finally {
+                            if (!written)
+                                delete(spill);
+                        }
+                        return spill;
+                    }
+                }));
+            }
+            for (Future<File> spill : spills)
+                merge(spill.get(), out);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            try {
+                // let blocks still being written close their files
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (File spill : files)
+                delete(spill);
+        }
+    }
+
+    // number of workers: one per core, but no more than have their double[n]
+    // of scratch fit in half the heap
+    private int threads() {
+        long fit = Runtime.getRuntime().maxMemory() / 2 / (8L * n + 1);
+        int cores = Runtime.getRuntime().availableProcessors();
+        return (int) Math.max(1, Math.min(cores, fit));
+    }
+
+    // write the segments of origins from..to-1 as records of
+    // (count, point indices in natural order)
+    private void writeBlock(int from, int to, double[] slopes, File spill)
+            throws IOException {
+        DataOutputStream os = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(spill), 1 << 16));
+        try {
+            for (int o = from; o < to; o++)
+                writeOrigin(o, slopes, os);
+        } finally {
+            os.close();
+        }
+    }
+
+    private void writeOrigin(int o, double[] slopes, DataOutputStream os)
+            throws IOException {
+        // pass 1: sorted slopes, keep the values with 3+ points
+        int m = 0;
+        for (int i = 0; i < n; i++)
+            if (i != o)
+                slopes[m++] = slope(o, i);
+        Arrays.sort(slopes, 0, m);
+        double[] runs = new double[4];
+        int r = 0;
+        for (int start = 0, end; start < m; start = end) {
+            end = start + 1;
+            while (end < m && slopes[end] == slopes[start])
+                end++;
+            if (end - start >= 3) {
+                if (r == runs.length) runs = Arrays.copyOf(runs, 2*r);
+                runs[r++] = slopes[start];
+            }
+        }
+        if (r == 0) return;
+
+        // pass 2: the points of each run; drop runs with a point before o
+        int[][] members = new int[r][];
+        int[] size = new int[r];
+        boolean[] dropped = new boolean[r];
+        for (int i = 0; i < n; i++) {
+            if (i == o) continue;
+            int k = Arrays.binarySearch(runs, 0, r, slope(o, i));
+            if (k < 0 || dropped[k]) continue;
+            if (less(i, o)) {
+                dropped[k] = true;
+                continue;
+            }
+            if (members[k] == null) members[k] = new int[4];
+            if (size[k] == members[k].length)
+                members[k] = Arrays.copyOf(members[k], 2*size[k]);
+            members[k][size[k]++] = i;
+        }
+
+        for (int k = 0; k < r; k++) {
+            if (dropped[k]) continue;
+            int[] seg = members[k];
+            // insertion sort in natural order, runs are short
+            for (int i = 1; i < size[k]; i++)
+                for (int j = i; j > 0 && less(seg[j], seg[j-1]); j--) {
+                    int t = seg[j];
+                    seg[j] = seg[j-1];
+                    seg[j-1] = t;
+                }
+            os.writeInt(size[k] + 1);
+            os.writeInt(o);
+            for (int i = 0; i < size[k]; i++)
+                os.writeInt(seg[i]);
+        }
+    }
+
+    // print the segments in a spill file, then delete it
+    private void merge(File spill, java.io.PrintStream out)
+            throws IOException {
+        DataInputStream is = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(spill), 1 << 16));
+        try {
+            StringBuilder line = new StringBuilder();
+            while (true) {
+                int count;
+                try {
+                    count = is.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                line.setLength(0);
+                for (int i = 0; i < count; i++) {
+                    int p = is.readInt();
+                    if (i > 0) line.append(" -> ");
+                    line.append('(').append(x(p)).append(", ")
+                        .append(y(p)).append(')');
+                }
+                out.println(line);
+            }
+        } finally {
+            is.close();
+        }
+        delete(spill);
+    }
+
+    // delete a spill file if it is still there, or else when the JVM exits
+    private static void delete(File spill) {
+        if (spill.exists() && !spill.delete())
+            spill.deleteOnExit();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int block = DEFAULT_BLOCK;
+        if (args.length > 1)
+            block = Integer.parseInt(args[1]);
+        if (block < 1)
+            throw new IllegalArgumentException("Block size must be positive");
+        File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        new OutOfCoreFast(args[0]).run(block, tmpDir, System.out);
+    }
+}
@@ -21,6 +21,16 @@ public class Point implements Comparable<Point> {
         this.y = y;
     }
 
+    // x coordinate
+    public int x() {
+        return x;
+    }
+
+    // y coordinate
+    public int y() {
+        return y;
+    }
+
     // plot this point to standard drawing
     public void draw() {
         StdDraw.point(x, y);
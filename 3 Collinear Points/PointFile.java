@@ -0,0 +1,201 @@
+/*************************************************************************
+ * Dependencies: Point.java
+ *
+ * Description: Fast loader for the point files read by Brute and Fast.
+ *
+ * Text files (N followed by N pairs of integer coordinates) are
+ * memory-mapped and scanned by hand instead of token by token through In.
+ * Binary files use a compact packed format, read with FileChannel.map:
+ *
+ *     int    magic   'P' 'T' 'S' '1'
+ *     int    type    0 = int coordinates, 1 = double coordinates
+ *     int    N       number of points
+ *     N x-coordinates, then N y-coordinates (big-endian)
+ *
+ * Usage: java PointFile input.txt output.bin   (converts text to binary)
+ *
+ *************************************************************************/
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class PointFile {
+
+    public static final int MAGIC = 0x50545331;     // "PTS1"
+    public static final int TYPE_INT = 0;
+    public static final int TYPE_DOUBLE = 1;
+
+    private static final int HEADER_BYTES = 12;
+    private static final int MAX_MAP = 1 << 30;     // bytes per mapping
+
+    // read the points in the file, text or binary
+    public static Point[] readPoints(String filename) {
+        int[][] xy = readCoordinates(filename);
+        Point[] pts = new Point[xy[0].length];
+        for (int i = 0; i < pts.length; i++)
+            pts[i] = new Point(xy[0][i], xy[1][i]);
+        return pts;
+    }
+
+    // read the coordinates in the file as { xs, ys }, text or binary
+    public static int[][] readCoordinates(String filename) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(filename, "r");
+            FileChannel ch = file.getChannel();
+            if (ch.size() >= HEADER_BYTES
+                    && ch.map(FileChannel.MapMode.READ_ONLY, 0, 4)
+                         .getInt() == MAGIC)
+                return readBinary(ch);
+            return readText(ch);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + filename, e);
+        } finally {
+            close(file);
+        }
+    }
+
+    // write the coordinates to a binary point file
+    public static void writeBinary(String filename, int[] xs, int[] ys) {
+        if (xs.length != ys.length)
+            throw new IllegalArgumentException("Coordinate arrays differ "
+                    + "in length");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(filename), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(TYPE_INT);
+            out.writeInt(xs.length);
+            for (int i = 0; i < xs.length; i++)
+                out.writeInt(xs[i]);
+            for (int i = 0; i < ys.length; i++)
+                out.writeInt(ys[i]);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + filename,
+                    e);
+        } finally {
+            close(out);
+        }
+    }
+
+    private static int[][] readBinary(FileChannel ch) throws IOException {
+        MappedByteBuffer header =
+                ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        header.getInt();
+        int type = header.getInt();
+        int n = header.getInt();
+        if (type != TYPE_INT)
+            throw new IllegalArgumentException("Collinear points need "
+                    + "integer coordinates");
+        if (n < 0 || ch.size() < HEADER_BYTES + 8L * n)
+            throw new IllegalArgumentException("Truncated point file");
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        readInts(ch, HEADER_BYTES, xs);
+        readInts(ch, HEADER_BYTES + 4L * n, ys);
+        return new int[][] { xs, ys };
+    }
+
+    // bulk copy a packed int array starting at byte offset pos
+    private static void readInts(FileChannel ch, long pos, int[] dst)
+            throws IOException {
+        int done = 0;
+        while (done < dst.length) {
+            int count = Math.min(dst.length - done, MAX_MAP / 4);
+            ch.map(FileChannel.MapMode.READ_ONLY, pos + 4L * done, 4L * count)
+              .asIntBuffer().get(dst, done, count);
+            done += count;
+        }
+    }
+
+    private static int[][] readText(FileChannel ch) throws IOException {
+        Scanner in = new Scanner(ch);
+        int n = in.nextInt();
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = in.nextInt();
+            ys[i] = in.nextInt();
+        }
+        return new int[][] { xs, ys };
+    }
+
+    private static void close(java.io.Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException e) {
+            // nothing useful to do, the data has already been read
+        }
+    }
+
+    // hand-written integer scanner over a (windowed) memory-mapped file
+    private static class Scanner {
+
+        private final FileChannel ch;
+        private final long size;
+        private MappedByteBuffer buf;
+        private long base;
+
+        public Scanner(FileChannel ch) throws IOException {
+            this.ch = ch;
+            this.size = ch.size();
+            map(0);
+        }
+
+        private void map(long pos) throws IOException {
+            base = pos;
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, pos,
+                    Math.min(MAX_MAP, size - pos));
+        }
+
+        // next byte, or -1 at end of file
+        private int read() throws IOException {
+            if (!buf.hasRemaining()) {
+                long pos = base + buf.position();
+                if (pos >= size) return -1;
+                map(pos);
+            }
+            return buf.get() & 0xFF;
+        }
+
+        public int nextInt() throws IOException {
+            int c = read();
+            while (c == ' ' || c == '\n' || c == '\r' || c == '\t')
+                c = read();
+            if (c == -1)
+                throw new IllegalArgumentException("Unexpected end of file");
+            boolean negative = false;
+            if (c == '-' || c == '+') {
+                negative = c == '-';
+                c = read();
+            }
+            if (c < '0' || c > '9')
+                throw new IllegalArgumentException("Expected an integer");
+            long value = 0;
+            while (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > (long) Integer.MAX_VALUE + 1)
+                    throw new IllegalArgumentException("Integer overflow");
+                c = read();
+            }
+            if (negative) value = -value;
+            if (value > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Integer overflow");
+            return (int) value;
+        }
+    }
+
+    // convert a text point file to the binary format
+    public static void main(String[] args) {
+        int[][] xy = readCoordinates(args[0]);
+        writeBinary(args[1], xy[0], xy[1]);
+        System.out.println("Wrote " + xy[0].length + " points to " + args[1]);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Solves many puzzle files concurrently on a bounded pool of worker
+ * threads and writes one JSON line per puzzle to standard output:
+ *
+ *     {"file":"puzzle.txt","status":"solved","moves":28,"nodes":1234,
+ *      "millis":12.5}
+ *
+ * status is solved, unsolvable, timeout, node-limit or error (with a
+ * "message"). Each solve is limited in time and in the number of search
+ * nodes, a proxy for its memory; by default the nodes of all threads fit in
+ * half the heap. A solve that still runs out of memory is reported as an
+ * error and its worker starts over with fresh tables, so one puzzle cannot
+ * stop the batch. Every worker keeps its node table and open list between
+ * solves, so large arrays are allocated once per thread.
+ * Throughput and latency percentiles go to standard error at the end.
+ *
+ * Usage: java BatchSolver [-threads n] [-timeout seconds] [-nodes n]
+ *                         [-pdb file] (file | directory | -) ...
+ * where - reads puzzle file names from standard input, one per line.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BatchSolver {
+
+    // rough heap bytes per search node, counting the node table, its hash
+    // index, the open list and the copies made while they grow
+    private static final int NODE_BYTES = 64;
+
+    private final int maxNodes;
+    private final long timeoutNanos;
+    private final PatternDatabase pdb;
+
+    // per-thread node tables and open lists, by board dimension
+    private final ThreadLocal<Map<Integer, StateTable>> tables =
+            new ThreadLocal<Map<Integer, StateTable>>() {
+                protected Map<Integer, StateTable> initialValue() {
+                    return new HashMap<Integer, StateTable>();
+                }
+            };
+    private final ThreadLocal<OpenList> queues =
+            new ThreadLocal<OpenList>() {
+                protected OpenList initialValue() {
+                    return new BucketQueue();
+                }
+            };
+
+    // a batch solver with the given limits per puzzle; pdb may be null
+    public BatchSolver(int maxNodes, double timeoutSeconds,
+                       PatternDatabase pdb) {
+        this.maxNodes = maxNodes;
+        this.timeoutNanos = (long) (timeoutSeconds * 1e9);
+        this.pdb = pdb;
+    }
+
+    // outcome of solving one puzzle file
+    private static class Result {
+        String file;
+        String status;
+        String message;
+        int moves = -1;
+        int nodes;
+        double millis;
+
+        String toJson() {
+            StringBuilder s = new StringBuilder();
+            s.append("{\"file\":").append(quote(file))
+             .append(",\"status\":\"").append(status).append('"');
+            if (moves >= 0)
+                s.append(",\"moves\":").append(moves);
+            s.append(",\"nodes\":").append(nodes);
+            s.append(",\"millis\":").append(String.format("%.3f", millis));
+            if (message != null)
+                s.append(",\"message\":").append(quote(message));
+            return s.append('}').toString();
+        }
+
+        private static String quote(String s) {
+            StringBuilder q = new StringBuilder("\"");
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') q.append('\\').append(c);
+                else if (c < ' ')          q.append(String.format("\\u%04x",
+                                                                  (int) c));
+                else                       q.append(c);
+            }
+            return q.append('"').toString();
+        }
+    }
+
+    // solve one puzzle file on the calling thread
+    private Result solve(String file) {
+        Result r = new Result();
+        r.file = file;
+        long start = System.nanoTime();
+        long deadline = timeoutNanos > 0 ? start + timeoutNanos
+                                         : Long.MAX_VALUE;
+        try {
+            Board initial = read(file);
+            int N = initial.dimension();
+            Map<Integer, StateTable> byDimension = tables.get();
+            StateTable nodes = byDimension.get(N);
+            if (nodes == null) {
+                nodes = new StateTable(new PackedBoard(N));
+                byDimension.put(N, nodes);
+            }
+            Heuristic h = pdb != null && pdb.dimension() == N ? pdb : null;
+            Solver solver = new Solver(initial, h, null, nodes,
+                                       queues.get(), maxNodes, deadline);
+            r.status = solver.isSolvable() ? "solved" : "unsolvable";
+            r.moves = solver.moves();
+            r.nodes = solver.nodes();
+        } catch (SolverLimitException e) {
+            // the solver gave up on one of its limits
+            r.status = e.isTimeout() ? "timeout" : "node-limit";
+        } catch (RuntimeException e) {
+            r.status = "error";
+            r.message = e.toString();
+        } catch (OutOfMemoryError e) {
+            // let the tables that filled the heap be collected
+            tables.remove();
+            queues.remove();
+            r.status = "error";
+            r.message = e.toString();
+        }
+        r.millis = (System.nanoTime() - start) / 1e6;
+        return r;
+    }
+
+    private static Board read(String filename) {
+        In in = new In(filename);
+        int N = in.readInt();
+        int[][] blocks = new int[N][N];
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                blocks[i][j] = in.readShort();
+        return new Board(blocks);
+    }
+
+    // solve every file on the given number of threads, printing results
+    // as they complete; returns the latency of each solve in milliseconds
+    public double[] run(List<String> files, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<Result> done =
+                new ExecutorCompletionService<Result>(pool);
+        try {
+            for (final String file : files)
+                done.submit(new Callable<Result>() {
+                    public Result call() {
+                        return solve(file);
+                    }
+                });
+            double[] latency = new double[files.size()];
+            for (int i = 0; i < files.size(); i++) {
+                Result r = done.take().get();
+                latency[i] = r.millis;
+                StdOut.println(r.toJson());
+            }
+            return latency;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // puzzle files named by a file, directory (its .txt files) or -
+    private static void collect(String arg, List<String> files)
+            throws IOException {
+        if (arg.equals("-")) {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(System.in));
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine())
+                if (line.trim().length() > 0)
+                    files.add(line.trim());
+            return;
+        }
+        File f = new File(arg);
+        if (f.isDirectory()) {
+            String[] names = f.list();
+            Arrays.sort(names);
+            for (String name : names)
+                if (name.endsWith(".txt"))
+                    files.add(new File(f, name).getPath());
+        } else {
+            files.add(arg);
+        }
+    }
+
+    // value at fraction q of the sorted latencies
+    private static double percentile(double[] sorted, double q) {
+        if (sorted.length == 0) return 0.0;
+        int i = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    // node limit per solve that keeps the tables of all threads within
+    // half the heap
+    private static int defaultMaxNodes(int threads) {
+        long nodes = Runtime.getRuntime().maxMemory() / 2
+                     / threads / NODE_BYTES;
+        return (int) Math.min(nodes, Integer.MAX_VALUE);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        double timeout = 0;
+        int maxNodes = -1;
+        PatternDatabase pdb = null;
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if      (args[i].equals("-threads")) threads =
+                    Integer.parseInt(args[++i]);
+            else if (args[i].equals("-timeout")) timeout =
+                    Double.parseDouble(args[++i]);
+            else if (args[i].equals("-nodes"))   maxNodes =
+                    Integer.parseInt(args[++i]);
+            else if (args[i].equals("-pdb"))     pdb =
+                    PatternDatabase.load(args[++i]);
+            else collect(args[i], files);
+        }
+        if (maxNodes < 0)
+            maxNodes = defaultMaxNodes(threads);
+
+        long start = System.nanoTime();
+        double[] latency = new BatchSolver(maxNodes, timeout, pdb)
+                .run(files, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latency);
+        System.err.printf("%d puzzles in %.3fs on %d threads: %.1f puzzles/s%n",
+                          latency.length, seconds, threads,
+                          latency.length / seconds);
+        System.err.printf("latency ms: p50 %.3f  p90 %.3f  p99 %.3f  "
+                          + "max %.3f%n", percentile(latency, 0.50),
+                          percentile(latency, 0.90), percentile(latency, 0.99),
+                          percentile(latency, 1.0));
+    }
+}
@@ -9,6 +9,8 @@ public class Board {
 
     private final int[] tiles;
     private final int N;
+    private final int blank;        // index of the empty tile
+    private final int manhattan;    // cached, see manhattan()
 
     // construct a board from an N-by-N array of blocks
     public Board(int[][] tiles) {
@@ -18,6 +20,8 @@ public class Board {
         for (int i = 0; i < tiles.length; i++)
             for (int j = 0; j < tiles[i].length; j++)
                 this.tiles[k++] = tiles[i][j];
+        blank = findBlank();
+        manhattan = computeManhattan();
     }
     
     private Board(int[] tiles) {
@@ -25,6 +29,16 @@ public class Board {
         this.tiles = new int[N*N];
         for (int i = 0; i < tiles.length; i++) 
             this.tiles[i] = tiles[i];
+        blank = findBlank();
+        manhattan = computeManhattan();
+    }
+
+    // takes ownership of tiles; blank and manhattan are already known
+    private Board(int[] tiles, int N, int blank, int manhattan) {
+        this.tiles = tiles;
+        this.N = N;
+        this.blank = blank;
+        this.manhattan = manhattan;
     }
 
     // board dimension N
@@ -32,6 +46,11 @@ public class Board {
         return N;
     }
 
+    // tile at index i in row-major order, 0 for the empty tile
+    int tileAt(int i) {
+        return tiles[i];
+    }
+
     // number of blocks out of place
     public int hamming() {
         int goal = 1;
@@ -44,36 +63,75 @@ public class Board {
 
     // sum of Manhattan distances between blocks and goal
     public int manhattan() {
-        int goal = 1;
+        return manhattan;
+    }
+
+    private int computeManhattan() {
         int sum = 0;
-        for (int i = 0; i < N*N-1; i++) {
-            if (tiles[i] != goal)
-                sum += getMDist(i, goal);
-            goal++;
-        }
+        for (int i = 0; i < N*N; i++)
+            if (tiles[i] != 0)
+                sum += getMDist(tiles[i], i);
         return sum;
     }
 
-    // get Manhattan distance
-    private int getMDist(int i, int goal) {
-        int vert = 0;
-        int horiz = 0;
-        for (int j = 0; j < N*N; j++)
-            if (tiles[j] == goal) {
-                vert = Math.abs(j/N - i/N);
-                horiz = Math.abs(j%N - i%N);
-                break;
-            }
-        return vert + horiz;
+    // get Manhattan distance from index i to the goal index of tile
+    private int getMDist(int tile, int i) {
+        int goal = tile - 1;
+        return Math.abs(goal/N - i/N) + Math.abs(goal%N - i%N);
+    }
+
+    private int findBlank() {
+        for (int i = 0; i < tiles.length; i++)
+            if (tiles[i] == 0)
+                return i;
+        throw new IllegalArgumentException("Board has no empty tile");
     }
 
     // is this board the goal board?
     public boolean isGoal() {
-        if (this.manhattan() == 0)
-            return true;
-        return false;
+        return manhattan == 0;
     }           
 
+    // can the goal board be reached from this board? Each move keeps the
+    // parity of the number of inversions (pairs of tiles in the wrong
+    // order) on odd boards; on even boards a vertical move flips it and
+    // changes the row of the empty tile by one
+    public boolean isSolvable() {
+        int[] a = new int[N*N - 1];
+        int k = 0;
+        for (int i = 0; i < N*N; i++)
+            if (tiles[i] != 0)
+                a[k++] = tiles[i];
+        long inversions = countInversions(a, new int[a.length], 0,
+                                          a.length - 1);
+        if (N % 2 == 1)
+            return inversions % 2 == 0;
+        return (inversions + blank / N) % 2 == 1;
+    }
+
+    // number of inversions in a[lo..hi], which is sorted on return
+    private static long countInversions(int[] a, int[] aux, int lo, int hi) {
+        if (hi <= lo)
+            return 0;
+        int mid = lo + (hi - lo) / 2;
+        long count = countInversions(a, aux, lo, mid)
+                   + countInversions(a, aux, mid + 1, hi);
+        for (int k = lo; k <= hi; k++)
+            aux[k] = a[k];
+        int i = lo;
+        int j = mid + 1;
+        for (int k = lo; k <= hi; k++) {
+            if      (i > mid)         a[k] = aux[j++];
+            else if (j > hi)          a[k] = aux[i++];
+            else if (aux[j] < aux[i]) {
+                a[k] = aux[j++];
+                count += mid - i + 1;
+            }
+            else                      a[k] = aux[i++];
+        }
+        return count;
+    }
+
     // a board obtained by exchanging two adjacent blocks in the same row
     public Board twin() {
         int[] twin = Arrays.copyOf(tiles, tiles.length);
@@ -105,40 +163,38 @@ public class Board {
                 return false;
         return true;
     }
+
+    // hash code consistent with equals
+    public int hashCode() {
+        return Arrays.hashCode(tiles);
+    }
     
     // all neighboring boards
     public Iterable<Board> neighbors() {
         Queue<Board> neighbors = new Queue<Board>();
-        for (int i = 0; i < N*N; i++)
-            if (tiles[i] == 0) {
-                if (i > 0 && i/N == (i-1)/N) {
-                    int[] c = Arrays.copyOf(tiles, tiles.length);
-                    c[i] = c[i-1];
-                    c[i-1] = 0;
-                    neighbors.enqueue(new Board(c));
-                }
-                if (i-N >= 0) {
-                    int[] c = Arrays.copyOf(tiles, tiles.length);
-                    c[i] = c[i-N];
-                    c[i-N] = 0;
-                    neighbors.enqueue(new Board(c));
-                }
-                if (i < tiles.length-1 && i/N == (i+1)/N) {
-                    int[] c = Arrays.copyOf(tiles, tiles.length);
-                    c[i] = c[i+1];
-                    c[i+1] = 0;
-                    neighbors.enqueue(new Board(c));
-                }
-                if (i+N < tiles.length) {
-                    int[] c = Arrays.copyOf(tiles, tiles.length);
-                    c[i] = c[i+N];
-                    c[i+N] = 0;
-                    neighbors.enqueue(new Board(c));
-                }
-            }
+        int i = blank;
+        if (i > 0 && i/N == (i-1)/N)
+            neighbors.enqueue(slide(i-1));
+        if (i-N >= 0)
+            neighbors.enqueue(slide(i-N));
+        if (i < tiles.length-1 && i/N == (i+1)/N)
+            neighbors.enqueue(slide(i+1));
+        if (i+N < tiles.length)
+            neighbors.enqueue(slide(i+N));
         return neighbors;
     }
 
+    // the board with the tile at index j slid into the empty tile; only
+    // that tile moves, so the Manhattan distance is updated in O(1)
+    private Board slide(int j) {
+        int tile = tiles[j];
+        int[] c = Arrays.copyOf(tiles, tiles.length);
+        c[blank] = tile;
+        c[j] = 0;
+        int m = manhattan - getMDist(tile, j) + getMDist(tile, blank);
+        return new Board(c, N, j, m);
+    }
+
     // string representation of the board
     public String toString() {
         StringBuilder s = new StringBuilder();
@@ -167,7 +223,8 @@ public class Board {
 
         System.out.println("Hamming = " + initial.hamming());
         System.out.println("Manhattan = " + initial.manhattan());
-        System.out.println("Goal board? " + initial.isGoal() + "\n");
+        System.out.println("Goal board? " + initial.isGoal());
+        System.out.println("Solvable? " + initial.isSolvable() + "\n");
         
         Board twin = initial.twin();
         System.out.println("Twin board:");
@@ -0,0 +1,88 @@
+/*
+ * An open list of node ids bucketed by (f, h), for the small non-negative
+ * integer priorities of the slider puzzle (a two-level Dial queue).
+ *
+ * Bucket (f, h) is at index f*(f+1)/2 + h, which is increasing in f and,
+ * for equal f, in h, so the buckets in index order are in priority order
+ * and a cursor that only moves back on insert below it finds the minimum.
+ * Insert is O(1); delMin is amortized O(1) since A* pops f values that
+ * never decrease. Among equal f the smallest h (largest moves) comes
+ * first, and within a bucket the last one in, which drives the search
+ * towards the goal on the last f layer.
+ */
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+public class BucketQueue implements OpenList {
+
+    private int[][] buckets = new int[64][];    // stack of ids per bucket
+    private int[] sizes = new int[64];
+    private int N;                              // number of entries
+    private int used;                           // buckets below are touched
+    private int f, h, min;                      // cursor, min = index(f, h)
+
+    // is the queue empty?
+    public boolean isEmpty() {
+        return N == 0;
+    }
+
+    // number of entries in the queue
+    public int size() {
+        return N;
+    }
+
+    // remove all entries, keeping the allocated buckets for reuse
+    public void clear() {
+        Arrays.fill(sizes, 0, used, 0);
+        N = 0;
+        used = 0;
+        f = h = min = 0;
+    }
+
+    private static int index(int f, int h) {
+        return f*(f+1)/2 + h;
+    }
+
+    // add node id with the given f and h
+    public void insert(int id, int f, int h) {
+        if (h < 0 || h > f)
+            throw new IllegalArgumentException("Need 0 <= h <= f, got f = "
+                    + f + ", h = " + h);
+        int i = index(f, h);
+        if (i >= sizes.length) {
+            int n = Math.max(i + 1, 2 * sizes.length);
+            buckets = Arrays.copyOf(buckets, n);
+            sizes = Arrays.copyOf(sizes, n);
+        }
+        int[] b = buckets[i];
+        if (b == null)
+            b = buckets[i] = new int[16];
+        else if (sizes[i] == b.length)
+            b = buckets[i] = Arrays.copyOf(b, 2 * b.length);
+        b[sizes[i]++] = id;
+        N++;
+        used = Math.max(used, i + 1);
+        if (i < min) {
+            this.f = f;
+            this.h = h;
+            min = i;
+        }
+    }
+
+    // remove an entry of smallest f, then smallest h; returns (f << 32) | id
+    public long delMin() {
+        if (N == 0)
+            throw new NoSuchElementException("Priority queue underflow");
+        while (sizes[min] == 0) {
+            min++;
+            if (++h > f) {
+                f++;
+                h = 0;
+            }
+        }
+        N--;
+        int id = buckets[min][--sizes[min]];
+        return ((long) f << 32) | id;
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * An admissible estimate of the number of moves from a packed state (see
+ * PackedBoard) to the goal, as used by Solver. The estimate must be 0 for
+ * the goal board only, since Solver uses that as its goal test.
+ */
+
+public interface Heuristic {
+
+    // dimension N of the N-by-N boards it estimates
+    int dimension();
+
+    // estimated moves to the goal from the state at s[off]
+    int estimate(long[] s, int off);
+
+    // estimate for the state at s[off], which was reached from a state
+    // with estimate parent by sliding tile from index from to index to
+    int update(long[] s, int off, int parent, int tile, int from, int to);
+}
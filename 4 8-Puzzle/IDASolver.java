@@ -0,0 +1,201 @@
+/*
+ * Solves the 8-puzzle problem (and its natural generalizations) using
+ * iterative-deepening A* (IDA*). Same API as Solver.
+ *
+ * Each iteration is a depth-first search cut off where moves + manhattan
+ * exceeds a bound, which then grows to the smallest value that was cut
+ * off. Memory is O(depth): the search slides tiles in place on a single
+ * int[] board and undoes the move on return, never moves a tile straight
+ * back, and tries the moves that reduce the Manhattan distance first.
+ * The moves of each depth are ordered in buffers allocated once per
+ * bound, not per node.
+ * Slower than Solver on easy boards, but it does not run out of memory on
+ * hard 15-puzzles.
+ */
+
+public class IDASolver {
+
+    private static final int FOUND = -1;
+
+    private final Board initial;
+    private final int N;
+    private final int[] tiles;
+    private int blank;
+    private int h;
+
+    private int[] path = new int[0];    // blank index after each move
+    private int[][] next = new int[0][];    // candidate moves by depth
+    private int[][] delta = new int[0][];   // and their change in h
+    private int moves = -1;
+    private final boolean solvable;
+
+    // find a solution to the initial board (using the IDA* algorithm)
+    public IDASolver(Board initial) {
+        this.initial = initial;
+        N = initial.dimension();
+        tiles = new int[N*N];
+        for (int i = 0; i < N*N; i++) {
+            tiles[i] = initial.tileAt(i);
+            if (tiles[i] == 0)
+                blank = i;
+        }
+        h = initial.manhattan();
+        solvable = initial.isSolvable();
+        if (!solvable)
+            return;
+
+        int bound = h;
+        while (true) {
+            grow(bound + 1);
+            int t = search(0, bound, -1);
+            if (t == FOUND)
+                break;
+            bound = t;
+        }
+    }
+
+    // depth-first search below g moves; returns FOUND, or the smallest
+    // f = g + h that exceeded bound
+    private int search(int g, int bound, int previous) {
+        int f = g + h;
+        if (f > bound)
+            return f;
+        if (h == 0) {
+            moves = g;
+            return FOUND;
+        }
+
+        // candidate moves ordered by their change in Manhattan distance
+        int[] next = this.next[g];
+        int[] delta = this.delta[g];
+        int count = 0;
+        for (int k = 0; k < 4; k++) {
+            int j = neighbor(blank, k);
+            if (j < 0 || j == previous)
+                continue;
+            int d = distance(tiles[j], blank) - distance(tiles[j], j);
+            int c = count++;
+            while (c > 0 && delta[c-1] > d) {
+                next[c] = next[c-1];
+                delta[c] = delta[c-1];
+                c--;
+            }
+            next[c] = j;
+            delta[c] = d;
+        }
+
+        int min = Integer.MAX_VALUE;
+        for (int c = 0; c < count; c++) {
+            int from = blank;
+            int j = next[c];
+            slide(j, delta[c]);
+            path[g] = j;
+            int t = search(g + 1, bound, from);
+            if (t == FOUND)
+                return FOUND;
+            slide(from, -delta[c]);
+            if (t < min)
+                min = t;
+        }
+        return min;
+    }
+
+    // make room for the path and move buffers of a search whose f is at
+    // most depth, which bounds its number of moves
+    private void grow(int depth) {
+        if (depth <= path.length)
+            return;
+        int n = Math.max(depth, 2 * path.length);
+        path = java.util.Arrays.copyOf(path, n);
+        next = java.util.Arrays.copyOf(next, n);
+        delta = java.util.Arrays.copyOf(delta, n);
+        for (int d = 0; d < n; d++)
+            if (next[d] == null) {
+                next[d] = new int[4];
+                delta[d] = new int[4];
+            }
+    }
+
+    // slide the tile at index j into the blank, changing h by d
+    private void slide(int j, int d) {
+        tiles[blank] = tiles[j];
+        tiles[j] = 0;
+        blank = j;
+        h += d;
+    }
+
+    // index of the k-th neighbor (left, up, right, down) of index i; -1 if
+    // it is off the board
+    private int neighbor(int i, int k) {
+        switch (k) {
+            case 0:  return i % N > 0     ? i-1 : -1;
+            case 1:  return i >= N        ? i-N : -1;
+            case 2:  return i % N < N-1   ? i+1 : -1;
+            default: return i+N < N*N     ? i+N : -1;
+        }
+    }
+
+    // Manhattan distance from index i to the goal index of tile
+    private int distance(int tile, int i) {
+        int goal = tile - 1;
+        return Math.abs(goal/N - i/N) + Math.abs(goal%N - i%N);
+    }
+
+    // is the initial board solvable?
+    public boolean isSolvable() {
+        return solvable;
+    }
+
+    // min number of moves to solve initial board; -1 if no solution
+    public int moves() {
+        return moves;
+    }
+
+    // sequence of boards in test solution; null if no solution
+    public Iterable<Board> solution() {
+        if (!isSolvable())
+            return null;
+        Queue<Board> seq = new Queue<Board>();
+        seq.enqueue(initial);
+        int[][] blocks = new int[N][N];
+        int b = 0;
+        for (int i = 0; i < N*N; i++) {
+            blocks[i/N][i%N] = initial.tileAt(i);
+            if (blocks[i/N][i%N] == 0)
+                b = i;
+        }
+        for (int m = 0; m < moves; m++) {
+            int j = path[m];
+            blocks[b/N][b%N] = blocks[j/N][j%N];
+            blocks[j/N][j%N] = 0;
+            b = j;
+            seq.enqueue(new Board(blocks));
+        }
+        return seq;
+    }
+
+    // solve a slider puzzle
+    public static void main(String[] args) {
+
+        // create initial board from file
+        In in = new In(args[0]);
+        int N = in.readInt();
+        int[][] blocks = new int[N][N];
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                blocks[i][j] = in.readShort();
+        Board initial = new Board(blocks);
+
+        // solve the puzzle
+        IDASolver solver = new IDASolver(initial);
+
+        // print solution to standard output
+        if (!solver.isSolvable())
+            StdOut.println("No solution possible");
+        else {
+            StdOut.println("Minimum number of moves = " + solver.moves());
+            for (Board board : solver.solution())
+                StdOut.println(board);
+        }
+    }
+}
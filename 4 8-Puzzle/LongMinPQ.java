@@ -0,0 +1,64 @@
+/*
+ * A minimum priority queue of primitive longs, implemented as a binary
+ * heap in a resizing array. Used as the open list of the packed solver,
+ * with the priority in the high and the node id in the low bits of each
+ * key, so no objects are allocated per entry.
+ */
+
+import java.util.NoSuchElementException;
+
+public class LongMinPQ {
+
+    private long[] pq = new long[16];   // heap in pq[1..N]
+    private int N;
+
+    // is the priority queue empty?
+    public boolean isEmpty() {
+        return N == 0;
+    }
+
+    // number of keys in the priority queue
+    public int size() {
+        return N;
+    }
+
+    // remove all keys, keeping the allocated array for reuse
+    public void clear() {
+        N = 0;
+    }
+
+    // add a key
+    public void insert(long key) {
+        if (N == pq.length - 1)
+            pq = java.util.Arrays.copyOf(pq, 2 * pq.length);
+        pq[++N] = key;
+        int k = N;
+        while (k > 1 && pq[k/2] > pq[k]) {
+            swap(k, k/2);
+            k = k/2;
+        }
+    }
+
+    // remove and return the smallest key
+    public long delMin() {
+        if (N == 0)
+            throw new NoSuchElementException("Priority queue underflow");
+        long min = pq[1];
+        pq[1] = pq[N--];
+        int k = 1;
+        while (2*k <= N) {
+            int j = 2*k;
+            if (j < N && pq[j+1] < pq[j]) j++;
+            if (pq[k] <= pq[j]) break;
+            swap(k, j);
+            k = j;
+        }
+        return min;
+    }
+
+    private void swap(int i, int j) {
+        long t = pq[i];
+        pq[i] = pq[j];
+        pq[j] = t;
+    }
+}
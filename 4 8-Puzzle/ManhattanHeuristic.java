@@ -0,0 +1,26 @@
+/*
+ * Sum of the Manhattan distances between blocks and goal, updated in O(1)
+ * from the single tile that moved.
+ */
+
+public class ManhattanHeuristic implements Heuristic {
+
+    private final PackedBoard enc;
+
+    public ManhattanHeuristic(PackedBoard enc) {
+        this.enc = enc;
+    }
+
+    public int dimension() {
+        return enc.dimension();
+    }
+
+    public int estimate(long[] s, int off) {
+        return enc.manhattan(s, off);
+    }
+
+    public int update(long[] s, int off, int parent, int tile, int from,
+                      int to) {
+        return parent - enc.distance(tile, from) + enc.distance(tile, to);
+    }
+}
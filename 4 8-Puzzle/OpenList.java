@@ -0,0 +1,23 @@
+/*
+ * The open list of the A* Solver: node ids queued by f = moves + h, with
+ * h passed along so that ties can be broken on it.
+ */
+
+public interface OpenList {
+
+    // is the open list empty?
+    boolean isEmpty();
+
+    // number of entries in the open list
+    int size();
+
+    // remove all entries, keeping allocated arrays for reuse
+    void clear();
+
+    // add node id with the given f and h, where 0 <= h <= f
+    void insert(int id, int f, int h);
+
+    // remove an entry of smallest f, preferring smaller h among those;
+    // returns (f << 32) | id
+    long delMin();
+}
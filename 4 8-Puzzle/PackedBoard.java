@@ -0,0 +1,122 @@
+/*
+ * Compact encoding of N-by-N boards as bit-packed longs: 4 bits per tile
+ * for N <= 4, so a 15-puzzle state is a single long, 5 bits per tile for
+ * N = 5 (three longs), and so on. Tile i of a state lives in word
+ * i / perWord at bit offset (i % perWord) * bits.
+ *
+ * States are passed as (long[] s, int off), so they can sit inside a
+ * larger array; moving a tile is a few shifts and masks, with no
+ * allocation.
+ */
+
+public class PackedBoard {
+
+    private final int N;
+    private final int bits;         // bits per tile
+    private final int perWord;      // tiles per long
+    private final int words;        // longs per state
+    private final long mask;        // low bits bits set
+
+    // encoding for N-by-N boards
+    public PackedBoard(int N) {
+        if (N < 2)
+            throw new IllegalArgumentException("Board dimension must be at "
+                    + "least 2");
+        this.N = N;
+        bits = 32 - Integer.numberOfLeadingZeros(N*N - 1);
+        perWord = 64 / bits;
+        words = (N*N + perWord - 1) / perWord;
+        mask = (1L << bits) - 1;
+    }
+
+    // board dimension N
+    public int dimension() {
+        return N;
+    }
+
+    // number of longs per state
+    public int words() {
+        return words;
+    }
+
+    // tile at index i of the state at s[off]
+    public int get(long[] s, int off, int i) {
+        return (int) ((s[off + i/perWord] >>> (i % perWord * bits)) & mask);
+    }
+
+    // put tile at index i of the state at s[off]
+    public void set(long[] s, int off, int i, int tile) {
+        int w = off + i/perWord;
+        int shift = i % perWord * bits;
+        s[w] = (s[w] & ~(mask << shift)) | ((long) tile << shift);
+    }
+
+    // slide the tile at index j into the empty tile at index blank
+    public void slide(long[] s, int off, int blank, int j) {
+        int jw = off + j/perWord;
+        int jShift = j % perWord * bits;
+        long tile = (s[jw] >>> jShift) & mask;
+        s[jw] &= ~(mask << jShift);
+        s[off + blank/perWord] |= tile << (blank % perWord * bits);
+    }
+
+    // Manhattan distance from index i to the goal index of tile
+    public int distance(int tile, int i) {
+        int goal = tile - 1;
+        return Math.abs(goal/N - i/N) + Math.abs(goal%N - i%N);
+    }
+
+    // sum of Manhattan distances between blocks and goal
+    public int manhattan(long[] s, int off) {
+        int sum = 0;
+        for (int i = 0; i < N*N; i++) {
+            int tile = get(s, off, i);
+            if (tile != 0)
+                sum += distance(tile, i);
+        }
+        return sum;
+    }
+
+    // index of the empty tile
+    public int blank(long[] s, int off) {
+        for (int i = 0; i < N*N; i++)
+            if (get(s, off, i) == 0)
+                return i;
+        throw new IllegalArgumentException("Board has no empty tile");
+    }
+
+    // do the states at a[aOff] and b[bOff] hold the same tiles?
+    public boolean equal(long[] a, int aOff, long[] b, int bOff) {
+        for (int w = 0; w < words; w++)
+            if (a[aOff + w] != b[bOff + w])
+                return false;
+        return true;
+    }
+
+    // well-mixed hash code of the state at s[off]
+    public int hash(long[] s, int off) {
+        long h = 0;
+        for (int w = 0; w < words; w++)
+            h = (h ^ s[off + w]) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // encode the board into s[off]
+    public void pack(Board b, long[] s, int off) {
+        if (b.dimension() != N)
+            throw new IllegalArgumentException("Board is not " + N + "-by-"
+                    + N);
+        for (int w = 0; w < words; w++)
+            s[off + w] = 0;
+        for (int i = 0; i < N*N; i++)
+            set(s, off, i, b.tileAt(i));
+    }
+
+    // decode the state at s[off] into a board
+    public Board unpack(long[] s, int off) {
+        int[][] blocks = new int[N][N];
+        for (int i = 0; i < N*N; i++)
+            blocks[i/N][i%N] = get(s, off, i);
+        return new Board(blocks);
+    }
+}
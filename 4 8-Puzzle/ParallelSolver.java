@@ -0,0 +1,370 @@
+/*
+ * Solves the 8-puzzle problem (and its natural generalizations) using
+ * hash-distributed A* (HDA*) on several threads. Same API as Solver.
+ *
+ * Every board is owned by one worker thread, chosen by a hash of its packed
+ * state. Each worker keeps the nodes it owns in its own StateTable and
+ * BucketQueue, so neither is shared. A worker expands its best open node
+ * and sends every neighbor it does not own to the owner's inbox, batched
+ * per destination; the owner keeps the neighbor only if it is new or was
+ * reached by a shorter path.
+ *
+ * The workers do not expand nodes in global f order, so the first goal
+ * found need not be the best. Instead the cheapest goal so far is kept as
+ * an incumbent, and a worker only expands nodes with f below it. The
+ * search ends when every worker is idle and no batch is in flight, which a
+ * single counter of active workers plus unprocessed batches detects: a
+ * worker counts itself active again before it takes a batch from its
+ * inbox, so the counter cannot reach zero while work remains. Since the
+ * heuristic never overestimates, no node left unexpanded could lead to a
+ * shorter solution than the incumbent, so moves() is still optimal.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class ParallelSolver {
+
+    private static final int BATCH = 64;        // states per message
+
+    private final PackedBoard enc;
+    private final Heuristic heuristic;
+    private final int T;                        // number of workers
+    private final int record;                   // longs per sent state
+    private final Worker[] workers;
+
+    private final AtomicInteger busy = new AtomicInteger();
+    private volatile boolean stop;
+    private volatile Throwable failure;
+
+    private int best = Integer.MAX_VALUE;       // moves of the incumbent goal
+    private int goal = -1;                      // its global id
+    private volatile int bound = Integer.MAX_VALUE;
+
+    private final boolean solvable;
+
+    // find a solution to the initial board on one thread per processor
+    public ParallelSolver(Board initial) {
+        this(initial, null, Runtime.getRuntime().availableProcessors());
+    }
+
+    // find a solution on the given number of threads using the given
+    // heuristic, which all threads share; Manhattan if null
+    public ParallelSolver(Board initial, Heuristic heuristic, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Need at least one thread");
+        enc = new PackedBoard(initial.dimension());
+        if (heuristic == null)
+            heuristic = new ManhattanHeuristic(enc);
+        else if (heuristic.dimension() != initial.dimension())
+            throw new IllegalArgumentException("Heuristic for "
+                    + heuristic.dimension() + "x" + heuristic.dimension()
+                    + " boards given a " + initial.dimension() + "x"
+                    + initial.dimension() + " board");
+        this.heuristic = heuristic;
+        T = threads;
+        record = enc.words() + 2;
+        workers = new Worker[T];
+        for (int w = 0; w < T; w++)
+            workers[w] = new Worker(w);
+
+        solvable = initial.isSolvable();
+        if (solvable)
+            search(initial);
+    }
+
+    // run all workers from the initial board until the search is over
+    private void search(Board initial) {
+        long[] s = new long[enc.words()];
+        enc.pack(initial, s, 0);
+        Worker root = workers[owner(s, 0)];
+        int id = root.nodes.add(s, 0, enc.blank(s, 0), 0,
+                                heuristic.estimate(s, 0), -1);
+        root.setPrevious(id, -1);
+        root.push(id);
+
+        busy.set(T);
+        Thread[] threads = new Thread[T];
+        for (int w = 0; w < T; w++) {
+            threads[w] = new Thread(workers[w], "ParallelSolver-" + w);
+            threads[w].start();
+        }
+        try {
+            for (Thread t : threads)
+                t.join();
+        } catch (InterruptedException e) {
+            stop = true;
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        }
+        if (failure != null)
+            throw new IllegalStateException("Worker failed", failure);
+    }
+
+    // worker that owns the state at s[off]
+    private int owner(long[] s, int off) {
+        // the high bits of the hash, as StateTable indexes on the low bits
+        return (int) (((enc.hash(s, off) & 0xFFFFFFFFL) * T) >>> 32);
+    }
+
+    // record a goal node reached in the given number of moves
+    private synchronized void offerGoal(int moves, int global) {
+        if (moves < best) {
+            best = moves;
+            goal = global;
+            bound = moves;
+        }
+    }
+
+    // one search thread with the nodes it owns
+    private class Worker implements Runnable {
+        private final int w;
+        private final StateTable nodes = new StateTable(enc);
+        private final BucketQueue pq = new BucketQueue();
+        private int[] previous = new int[1 << 10];  // blank before last move
+        private final ConcurrentLinkedQueue<long[]> inbox =
+                new ConcurrentLinkedQueue<long[]>();
+        private final long[][] outbox = new long[T][];
+        private final int[] outSize = new int[T];
+        private final long[] s = new long[enc.words()];
+
+        Worker(int w) {
+            this.w = w;
+        }
+
+        public void run() {
+            try {
+                boolean active = true;
+                int expanded = 0;
+                while (!stop) {
+                    long[] batch = inbox.poll();
+                    if (batch != null) {
+                        if (!active) {
+                            busy.incrementAndGet();
+                            active = true;
+                        }
+                        receive(batch);
+                        busy.decrementAndGet();
+                        continue;
+                    }
+                    int min = next();
+                    if (min >= 0) {
+                        expand(min);
+                        if ((++expanded & 255) == 0)
+                            flush();
+                        continue;
+                    }
+                    flush();
+                    if (active) {
+                        active = false;
+                        busy.decrementAndGet();
+                    }
+                    if (busy.get() == 0 && inbox.isEmpty())
+                        break;
+                    LockSupport.parkNanos(10000);
+                }
+            } catch (Throwable e) {
+                failure = e;
+                stop = true;
+            }
+        }
+
+        // best open node worth expanding, -1 if there is none; a goal is
+        // offered as an incumbent instead
+        private int next() {
+            while (!pq.isEmpty()) {
+                long key = pq.delMin();
+                int id = (int) key;
+                int f = (int) (key >>> 32);
+                // skip entries superseded by a shorter path to the same board
+                if (f != nodes.moves(id) + nodes.h(id))
+                    continue;
+                if (f >= bound) {
+                    pq.clear();             // nothing left can improve on it
+                    return -1;
+                }
+                if (nodes.h(id) == 0) {
+                    offerGoal(nodes.moves(id), global(id));
+                    continue;
+                }
+                return id;
+            }
+            return -1;
+        }
+
+        // generate the neighbors of node min
+        private void expand(int min) {
+            int N = enc.dimension();
+            int b = nodes.blank(min);
+            int from = previous[min];
+            int moves = nodes.moves(min) + 1;
+            for (int k = 0; k < 4; k++) {
+                int j = neighbor(b, k, N);
+                if (j < 0 || j == from)
+                    continue;
+                nodes.state(min, s, 0);
+                int tile = enc.get(s, 0, j);
+                enc.slide(s, 0, b, j);
+                int h = heuristic.update(s, 0, nodes.h(min), tile, j, b);
+                if (moves + h >= bound)
+                    continue;
+                int to = owner(s, 0);
+                if (to == w) offer(s, 0, j, moves, h, global(min), b);
+                else         send(to, j, moves, h, global(min), b);
+            }
+        }
+
+        // keep the state at s[off] if it is new or reached in fewer moves
+        private void offer(long[] s, int off, int blankAt, int g, int h,
+                           int from, int prev) {
+            int id = nodes.find(s, off);
+            if (id < 0)
+                id = nodes.add(s, off, blankAt, g, h, from);
+            else if (nodes.moves(id) > g)
+                nodes.relax(id, g, from);
+            else
+                return;
+            setPrevious(id, prev);
+            push(id);
+        }
+
+        // append the state in s to the batch for worker to
+        private void send(int to, int blankAt, int g, int h, int from,
+                          int prev) {
+            if (outbox[to] == null)
+                outbox[to] = new long[BATCH * record];
+            long[] out = outbox[to];
+            int off = outSize[to] * record;
+            System.arraycopy(s, 0, out, off, enc.words());
+            out[off + record - 2] = ((long) g << 32) | (h & 0xFFFFFFFFL);
+            out[off + record - 1] = ((long) from << 32)
+                                  | ((prev & 0xFFFF) << 16) | blankAt;
+            if (++outSize[to] == BATCH)
+                flush(to);
+        }
+
+        // send every partly filled batch
+        private void flush() {
+            for (int to = 0; to < T; to++)
+                if (outSize[to] > 0)
+                    flush(to);
+        }
+
+        private void flush(int to) {
+            long[] batch = Arrays.copyOf(outbox[to], outSize[to] * record);
+            outSize[to] = 0;
+            busy.incrementAndGet();         // before the owner can see it
+            workers[to].inbox.add(batch);
+        }
+
+        // take in a batch of states sent by other workers
+        private void receive(long[] batch) {
+            for (int off = 0; off < batch.length; off += record) {
+                long gh = batch[off + record - 2];
+                long link = batch[off + record - 1];
+                int g = (int) (gh >>> 32);
+                int h = (int) gh;
+                if (g + h >= bound)
+                    continue;
+                int prev = (int) (link >>> 16) & 0xFFFF;
+                offer(batch, off, (int) link & 0xFFFF, g, h,
+                      (int) (link >>> 32), prev == 0xFFFF ? -1 : prev);
+            }
+        }
+
+        private void setPrevious(int id, int prev) {
+            if (id >= previous.length)
+                previous = Arrays.copyOf(previous, 2 * previous.length);
+            previous[id] = prev;
+        }
+
+        private void push(int id) {
+            pq.insert(id, nodes.moves(id) + nodes.h(id), nodes.h(id));
+        }
+
+        // id of node id of this worker among the nodes of all workers
+        private int global(int id) {
+            return id * T + w;
+        }
+    }
+
+    // index of the k-th neighbor (left, up, right, down) of index i on an
+    // N-by-N board; -1 if it is off the board
+    private static int neighbor(int i, int k, int N) {
+        switch (k) {
+            case 0:  return i % N > 0     ? i-1 : -1;
+            case 1:  return i >= N        ? i-N : -1;
+            case 2:  return i % N < N-1   ? i+1 : -1;
+            default: return i+N < N*N     ? i+N : -1;
+        }
+    }
+
+    // number of nodes generated by all workers
+    int nodes() {
+        int n = 0;
+        for (Worker worker : workers)
+            n += worker.nodes.size();
+        return n;
+    }
+
+    // is the initial board solvable?
+    public boolean isSolvable() {
+        return solvable;
+    }
+
+    // min number of moves to solve initial board; -1 if no solution
+    public int moves() {
+        if (isSolvable())
+            return best;
+        else return -1;
+    }
+
+    // sequence of boards in test solution; null if no solution
+    public Iterable<Board> solution() {
+        if (isSolvable()) {
+            Stack<Board> seq = new Stack<Board>();
+            for (int g = goal; g >= 0; ) {
+                StateTable nodes = workers[g % T].nodes;
+                int id = g / T;
+                seq.push(nodes.board(id));
+                g = nodes.parent(id);
+            }
+            return seq;
+        }
+        return null;
+    }
+
+    // solve a slider puzzle on the given number of threads (default: one
+    // per processor), with a pattern database file if one is given
+    public static void main(String[] args) {
+
+        // create initial board from file
+        In in = new In(args[0]);
+        int N = in.readInt();
+        int[][] blocks = new int[N][N];
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                blocks[i][j] = in.readShort();
+        Board initial = new Board(blocks);
+
+        // solve the puzzle
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 1)
+            threads = Integer.parseInt(args[1]);
+        Heuristic heuristic = null;
+        if (args.length > 2)
+            heuristic = PatternDatabase.load(args[2]);
+        ParallelSolver solver = new ParallelSolver(initial, heuristic, threads);
+
+        // print solution to standard output
+        if (!solver.isSolvable())
+            StdOut.println("No solution possible");
+        else {
+            StdOut.println("Minimum number of moves = " + solver.moves());
+            for (Board board : solver.solution())
+                StdOut.println(board);
+        }
+    }
+}
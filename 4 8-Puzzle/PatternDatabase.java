@@ -0,0 +1,321 @@
+/*
+ * Additive (disjoint) pattern database heuristic for N-by-N puzzles.
+ *
+ * The tiles are split into disjoint groups. For each group a table gives,
+ * for every placement of its tiles, the fewest moves of those tiles needed
+ * to bring them home, found by a breadth-first search backwards from the
+ * goal over (group tile positions, blank position) states in which only
+ * moves of group tiles cost 1 (0-1 BFS). Since every move moves one tile,
+ * the group values can be added; tiles in no group add their Manhattan
+ * distance. A placement is indexed as the sum of pos[k] * (N*N)^k, so a
+ * table has (N*N)^size bytes.
+ *
+ * Tables can be saved to a file and loaded back through a memory mapping:
+ *
+ *     int magic 'P' 'D' 'B' '1', int N, int number of groups, then per
+ *     group: int size, the size tiles, (N*N)^size bytes
+ *
+ * Usage: java PatternDatabase N output.pdb 1,2,3,4,5 6,7,8,9,10 ...
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class PatternDatabase implements Heuristic {
+
+    private static final int MAGIC = 0x50444231;     // "PDB1"
+    private static final int UNSEEN = 0xFF;
+
+    private final PackedBoard enc;
+    private final int N;
+    private final int[][] groups;       // tiles of each group
+    private final int[] groupOf;        // group of each tile, -1 if none
+    private final int[] slotOf;         // position of each tile in its group
+    private final int[] pow;            // (N*N)^k
+    private final ByteBuffer[] tables;
+
+    private PatternDatabase(int N, int[][] groups, ByteBuffer[] tables) {
+        this.N = N;
+        this.enc = new PackedBoard(N);
+        this.groups = groups;
+        this.tables = tables;
+        groupOf = new int[N*N];
+        slotOf = new int[N*N];
+        Arrays.fill(groupOf, -1);
+        int largest = 0;
+        for (int g = 0; g < groups.length; g++) {
+            largest = Math.max(largest, groups[g].length);
+            for (int k = 0; k < groups[g].length; k++) {
+                int tile = groups[g][k];
+                if (tile < 1 || tile >= N*N || groupOf[tile] != -1)
+                    throw new IllegalArgumentException("Groups must be "
+                            + "disjoint sets of tiles 1 to " + (N*N - 1));
+                groupOf[tile] = g;
+                slotOf[tile] = k;
+            }
+        }
+        pow = new int[largest + 2];
+        pow[0] = 1;
+        for (int k = 1; k < pow.length; k++) {
+            if ((long) pow[k-1] * N * N > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Group of " + (k-1)
+                        + " tiles is too large for " + N + "-by-" + N);
+            pow[k] = pow[k-1] * N * N;
+        }
+    }
+
+    // build the tables for N-by-N boards and the given groups of tiles
+    public static PatternDatabase build(int N, int[][] groups) {
+        PatternDatabase pdb = new PatternDatabase(N, groups,
+                new ByteBuffer[groups.length]);
+        for (int g = 0; g < groups.length; g++)
+            pdb.tables[g] = ByteBuffer.wrap(pdb.search(groups[g]));
+        return pdb;
+    }
+
+    // load tables saved by save(); they stay memory-mapped
+    public static PatternDatabase load(String filename) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(filename, "r");
+            FileChannel ch = file.getChannel();
+            MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                                         ch.size());
+            if (in.getInt() != MAGIC)
+                throw new IllegalArgumentException(filename + " is not a "
+                        + "pattern database");
+            int N = in.getInt();
+            int[][] groups = new int[in.getInt()][];
+            ByteBuffer[] tables = new ByteBuffer[groups.length];
+            for (int g = 0; g < groups.length; g++) {
+                groups[g] = new int[in.getInt()];
+                for (int k = 0; k < groups[g].length; k++)
+                    groups[g][k] = in.getInt();
+                long size = 1;
+                for (int k = 0; k < groups[g].length; k++)
+                    size *= N * N;
+                ByteBuffer table = in.slice();
+                table.limit((int) size);
+                tables[g] = table;
+                in.position(in.position() + (int) size);
+            }
+            return new PatternDatabase(N, groups, tables);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + filename, e);
+        } finally {
+            if (file != null)
+                try {
+                    file.close();   // the mapping stays valid
+                } catch (IOException e) {
+                    // nothing useful to do, the tables are mapped
+                }
+        }
+    }
+
+    // write the tables to a file
+    public void save(String filename) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(filename), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(N);
+            out.writeInt(groups.length);
+            for (int g = 0; g < groups.length; g++) {
+                out.writeInt(groups[g].length);
+                for (int tile : groups[g])
+                    out.writeInt(tile);
+                ByteBuffer table = tables[g].duplicate();
+                table.clear();
+                byte[] chunk = new byte[1 << 16];
+                while (table.hasRemaining()) {
+                    int len = Math.min(chunk.length, table.remaining());
+                    table.get(chunk, 0, len);
+                    out.write(chunk, 0, len);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + filename,
+                    e);
+        } finally {
+            if (out != null)
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Could not write "
+                            + filename, e);
+                }
+        }
+    }
+
+    // 0-1 BFS from the goal over (tile positions, blank) states of a group;
+    // returns the fewest group moves for every placement of its tiles
+    private byte[] search(int[] group) {
+        int cells = N*N;
+        int k = group.length;
+        byte[] dist = new byte[pow[k+1]];
+        Arrays.fill(dist, (byte) UNSEEN);
+
+        int start = (cells - 1) * pow[k];
+        for (int t = 0; t < k; t++)
+            start += (group[t] - 1) * pow[t];
+        dist[start] = 0;
+        IntDeque deque = new IntDeque();
+        deque.addFirst(start);
+
+        int[] pos = new int[k];
+        int[] occupant = new int[cells];
+        while (!deque.isEmpty()) {
+            int u = deque.removeFirst();
+            int d = dist[u] & 0xFF;
+            int blank = u / pow[k];
+            Arrays.fill(occupant, -1);
+            for (int t = 0; t < k; t++) {
+                pos[t] = u / pow[t] % cells;
+                occupant[pos[t]] = t;
+            }
+            for (int dir = 0; dir < 4; dir++) {
+                int j = neighbor(blank, dir);
+                if (j < 0) continue;
+                int t = occupant[j];
+                int v = u + (j - blank) * pow[k];
+                int w = 0;
+                if (t >= 0) {
+                    v += (blank - j) * pow[t];
+                    w = 1;
+                }
+                if (d + w < (dist[v] & 0xFF)) {
+                    dist[v] = (byte) (d + w);
+                    if (w == 0) deque.addFirst(v);
+                    else        deque.addLast(v);
+                }
+            }
+        }
+
+        // the table keeps the best value over all blank positions
+        byte[] table = new byte[pow[k]];
+        Arrays.fill(table, (byte) UNSEEN);
+        for (int u = 0; u < dist.length; u++) {
+            int p = u % pow[k];
+            if ((dist[u] & 0xFF) < (table[p] & 0xFF))
+                table[p] = dist[u];
+        }
+        return table;
+    }
+
+    // index of the k-th neighbor (left, up, right, down) of index i; -1 if
+    // it is off the board
+    private int neighbor(int i, int k) {
+        switch (k) {
+            case 0:  return i % N > 0     ? i-1 : -1;
+            case 1:  return i >= N        ? i-N : -1;
+            case 2:  return i % N < N-1   ? i+1 : -1;
+            default: return i+N < N*N     ? i+N : -1;
+        }
+    }
+
+    // board dimension N
+    public int dimension() {
+        return N;
+    }
+
+    // table index of group g's tiles in the state at s[off]
+    private int index(long[] s, int off, int g) {
+        int idx = 0;
+        for (int i = 0; i < N*N; i++) {
+            int tile = enc.get(s, off, i);
+            if (tile != 0 && groupOf[tile] == g)
+                idx += i * pow[slotOf[tile]];
+        }
+        return idx;
+    }
+
+    public int estimate(long[] s, int off) {
+        int[] idx = new int[groups.length];
+        int sum = 0;
+        for (int i = 0; i < N*N; i++) {
+            int tile = enc.get(s, off, i);
+            if (tile == 0) continue;
+            int g = groupOf[tile];
+            if (g < 0) sum += enc.distance(tile, i);
+            else       idx[g] += i * pow[slotOf[tile]];
+        }
+        for (int g = 0; g < groups.length; g++)
+            sum += tables[g].get(idx[g]) & 0xFF;
+        return sum;
+    }
+
+    public int update(long[] s, int off, int parent, int tile, int from,
+                      int to) {
+        int g = groupOf[tile];
+        if (g < 0)
+            return parent - enc.distance(tile, from) + enc.distance(tile, to);
+        int now = index(s, off, g);
+        int before = now + (from - to) * pow[slotOf[tile]];
+        return parent - (tables[g].get(before) & 0xFF)
+                      + (tables[g].get(now) & 0xFF);
+    }
+
+    // growable circular deque of ints for the 0-1 BFS
+    private static class IntDeque {
+        private int[] a = new int[1 << 12];
+        private int head;
+        private int size;
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public void addFirst(int x) {
+            if (size == a.length) grow();
+            head = (head - 1 + a.length) % a.length;
+            a[head] = x;
+            size++;
+        }
+
+        public void addLast(int x) {
+            if (size == a.length) grow();
+            a[(head + size) % a.length] = x;
+            size++;
+        }
+
+        public int removeFirst() {
+            int x = a[head];
+            head = (head + 1) % a.length;
+            size--;
+            return x;
+        }
+
+        private void grow() {
+            int[] b = new int[2 * a.length];
+            for (int i = 0; i < size; i++)
+                b[i] = a[(head + i) % a.length];
+            a = b;
+            head = 0;
+        }
+    }
+
+    // build a database and save it
+    public static void main(String[] args) {
+        int N = Integer.parseInt(args[0]);
+        int[][] groups = new int[args.length - 2][];
+        for (int g = 0; g < groups.length; g++) {
+            String[] tiles = args[g + 2].split(",");
+            groups[g] = new int[tiles.length];
+            for (int k = 0; k < tiles.length; k++)
+                groups[g][k] = Integer.parseInt(tiles[k].trim());
+        }
+        Stopwatch timer = new Stopwatch();
+        PatternDatabase pdb = build(N, groups);
+        pdb.save(args[1]);
+        StdOut.println("Built " + groups.length + " tables in "
+                + timer.elapsedTime() + "s");
+    }
+}
@@ -1,59 +1,250 @@
-/* 
- * Solves the 8-puzzle problem (and its natural generalizations) using 
- * the A* search algorithm. 
+/*
+ * Solves the 8-puzzle problem (and its natural generalizations) using
+ * the A* search algorithm.
+ *
+ * The search runs on bit-packed states (see PackedBoard) kept in a
+ * StateTable, with a BucketQueue of node ids as the open list, so no
+ * Board is created until solution() is called. Each board is stored once with
+ * the fewest moves found to it; a board reached again by a path that is
+ * no shorter is not searched again.
+ *
+ * The estimate of the remaining moves comes from a pluggable Heuristic:
+ * Manhattan distance by default, or a PatternDatabase for larger boards.
+ * Unsolvable boards are rejected up front by Board.isSolvable(), so only
+ * the initial board is ever searched.
+ *
+ * Each run keeps SolverStats counters, reports them to an optional
+ * SolverListener every REPORT expansions and at the end, and commits a
+ * SolverEvent to Java Flight Recorder when that event is enabled.
  */
 
 public class Solver {
-    
-    private MinPQ<SearchNode> pq = new MinPQ<SearchNode>();
-    private SearchNode min;
-    
+
+    public static final int REPORT = 1 << 16;   // expansions per report
+    private static final long CLOCK = clockCost();
+
+    private final PackedBoard enc;
+    private final Heuristic heuristic;
+    private final StateTable nodes;
+    private final OpenList pq;
+    private final int goal;             // node id of the goal, -1 if none
+    private final boolean solvable;
+
+    private final int maxNodes;         // give up beyond this many nodes
+    private final long deadline;        // or after this System.nanoTime()
+
+    private final SolverListener listener;
+    private final SolverStats stats = new SolverStats();
+    private long start;                 // System.nanoTime() of the search
+    private long sampledNanos;          // heuristic time, 1 expansion in 64
+
     // find a solution to the initial board (using the A* algorithm)
-    public Solver(Board initial) {        
-        pq.insert(new SearchNode(initial, true));
-        pq.insert(new SearchNode(initial.twin(), false));
-        
-        min = pq.delMin();
-        
-        while (!min.board.isGoal()) {
-            for (Board b : min.board.neighbors())
-                if (min.priorSn == null || !b.equals(min.priorSn.board))
-                    pq.insert(new SearchNode(min, b));
-            min = pq.delMin();
+    public Solver(Board initial) {
+        this(initial, null);
+    }
+
+    // find a solution using the given heuristic; Manhattan if null
+    public Solver(Board initial, Heuristic heuristic) {
+        this(initial, heuristic, null);
+    }
+
+    // find a solution, reporting progress to listener if not null
+    public Solver(Board initial, Heuristic heuristic,
+                  SolverListener listener) {
+        this(initial, heuristic, listener, null, null, Integer.MAX_VALUE,
+             Long.MAX_VALUE);
+    }
+
+    // find a solution reusing the given node table and open list (for the
+    // same board dimension) if not null; throws SolverLimitException once
+    // the search holds more than maxNodes nodes or System.nanoTime()
+    // passes deadline
+    Solver(Board initial, Heuristic heuristic, SolverListener listener,
+           StateTable nodes, OpenList pq, int maxNodes, long deadline) {
+        enc = new PackedBoard(initial.dimension());
+        if (heuristic == null)
+            heuristic = new ManhattanHeuristic(enc);
+        else if (heuristic.dimension() != initial.dimension())
+            throw new IllegalArgumentException("Heuristic for "
+                    + heuristic.dimension() + "x" + heuristic.dimension()
+                    + " boards given a " + initial.dimension() + "x"
+                    + initial.dimension() + " board");
+        this.heuristic = heuristic;
+        if (nodes == null) nodes = new StateTable(enc);
+        else               nodes.clear();
+        if (pq == null) pq = new BucketQueue();
+        else            pq.clear();
+        this.nodes = nodes;
+        this.pq = pq;
+        this.maxNodes = maxNodes;
+        this.deadline = deadline;
+        this.listener = listener;
+        solvable = initial.isSolvable();
+        goal = solvable ? run(initial) : -1;
+    }
+
+    // search with the counters and reports around it
+    private int run(Board initial) {
+        // loading the event class starts up JFR, so only once it is running
+        SolverEvent event = null;
+        if (jdk.jfr.FlightRecorder.isInitialized()) {
+            event = new SolverEvent();
+            event.begin();
+        }
+        start = System.nanoTime();
+        int found = -1;
+        try {
+            found = search(initial);
+            return found;
+        } finally {
+            updateStats();
+            if (listener != null)
+                listener.finished(stats);
+            if (event != null && event.shouldCommit()) {
+                event.set(enc.dimension(),
+                          found < 0 ? -1 : nodes.moves(found), stats);
+                event.commit();
+            }
+        }
+    }
+
+    // run A* from the initial board, returning the node id of the goal
+    private int search(Board initial) {
+        int N = enc.dimension();
+        long[] s = new long[enc.words()];
+        enc.pack(initial, s, 0);
+        push(nodes.add(s, 0, enc.blank(s, 0), 0, heuristic.estimate(s, 0),
+                       -1));
+
+        while (true) {
+            long key = pq.delMin();
+            int min = (int) key;
+            // skip entries superseded by a shorter path to the same board
+            if ((int) (key >>> 32) != nodes.moves(min) + nodes.h(min))
+                continue;
+            if (nodes.h(min) == 0)
+                return min;
+            long expanded = ++stats.expanded;
+            if ((expanded & 1023) == 0) {
+                checkLimits();
+                if (listener != null && (expanded & (REPORT - 1)) == 0) {
+                    updateStats();
+                    listener.progress(stats);
+                }
+            }
+            boolean timed = (expanded & 63) == 0;
+
+            int b = nodes.blank(min);
+            int from = nodes.parent(min) < 0 ? -1
+                     : nodes.blank(nodes.parent(min));
+            int moves = nodes.moves(min) + 1;
+            for (int k = 0; k < 4; k++) {
+                int j = neighbor(b, k, N);
+                if (j < 0 || j == from)
+                    continue;
+                nodes.state(min, s, 0);
+                int tile = enc.get(s, 0, j);
+                enc.slide(s, 0, b, j);
+                stats.generated++;
+                long t = timed ? System.nanoTime() : 0;
+                int h = heuristic.update(s, 0, nodes.h(min), tile, j, b);
+                if (timed)
+                    sampledNanos += Math.max(0, System.nanoTime() - t - CLOCK);
+                int id = nodes.find(s, 0);
+                if (id < 0)
+                    id = nodes.add(s, 0, j, moves, h, min);
+                else if (nodes.moves(id) > moves)
+                    nodes.relax(id, moves, min);
+                else {
+                    stats.duplicates++;
+                    continue;
+                }
+                push(id);
+            }
+            if (pq.size() > stats.peakOpen)
+                stats.peakOpen = pq.size();
+        }
+    }
+
+    // typical time of a System.nanoTime() call, taken off timed intervals
+    private static long clockCost() {
+        long[] d = new long[1001];
+        for (int i = 0; i < d.length; i++) {
+            long t = System.nanoTime();
+            d[i] = System.nanoTime() - t;
         }
+        java.util.Arrays.sort(d);
+        return d[d.length / 2];
     }
-    
+
+    // bring the counters that are not kept up to date on the fly up to date
+    private void updateStats() {
+        stats.nodes = nodes.size();
+        stats.open = pq.size();
+        stats.elapsedNanos = System.nanoTime() - start;
+        stats.heuristicNanos = 64 * sampledNanos;
+    }
+
+    private void checkLimits() {
+        if (nodes.size() > maxNodes)
+            throw new SolverLimitException("Node limit of " + maxNodes
+                    + " reached", false);
+        if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0)
+            throw new SolverLimitException("Time limit reached", true);
+    }
+
+    // number of nodes generated by the search
+    int nodes() {
+        return nodes.size();
+    }
+
+    // counters of the search, final once the constructor has returned
+    public SolverStats stats() {
+        return stats;
+    }
+
+    // index of the k-th neighbor (left, up, right, down) of index i on an
+    // N-by-N board; -1 if it is off the board
+    private static int neighbor(int i, int k, int N) {
+        switch (k) {
+            case 0:  return i % N > 0     ? i-1 : -1;
+            case 1:  return i >= N        ? i-N : -1;
+            case 2:  return i % N < N-1   ? i+1 : -1;
+            default: return i+N < N*N     ? i+N : -1;
+        }
+    }
+
+    // queue node id by f = moves + h, ties broken by h
+    private void push(int id) {
+        pq.insert(id, nodes.moves(id) + nodes.h(id), nodes.h(id));
+    }
+
     // is the initial board solvable?
     public boolean isSolvable() {
-        return min.isOrig;
+        return solvable;
     }
-    
-    // min number of moves to solve initial board; -1 if no solution           
+
+    // min number of moves to solve initial board; -1 if no solution
     public int moves() {
         if (isSolvable())
-            return min.moves;
+            return nodes.moves(goal);
         else return -1;
     }
-    
+
     // sequence of boards in test solution; null if no solution
     public Iterable<Board> solution() {
         if (isSolvable()) {
-            Stack<Board> seq = new Stack<Board>();  
-            seq.push(min.board);
-            SearchNode prior = min.priorSn;
-            
-            while (prior != null) {
-                seq.push(prior.board);
-                prior = prior.priorSn;
-            }                                                                  
+            Stack<Board> seq = new Stack<Board>();
+            for (int id = goal; id >= 0; id = nodes.parent(id))
+                seq.push(nodes.board(id));
             return seq;
         }
         return null;
     }
 
-    // solve a slider puzzle
+    // solve a slider puzzle, with a pattern database file if one is given
     public static void main(String[] args) {
-        
+
         // create initial board from file
         In in = new In(args[0]);
         int N = in.readInt();
@@ -64,7 +255,10 @@ public class Solver {
         Board initial = new Board(blocks);
 
         // solve the puzzle
-        Solver solver = new Solver(initial);
+        Heuristic heuristic = null;
+        if (args.length > 1)
+            heuristic = PatternDatabase.load(args[1]);
+        Solver solver = new Solver(initial, heuristic);
 
         // print solution to standard output
         if (!solver.isSolvable())
@@ -75,36 +269,4 @@ public class Solver {
                 StdOut.println(board);
         }
     }
-    
-    private class SearchNode implements Comparable<SearchNode> {
-        SearchNode priorSn = null;
-        Board board = null;
-        int priorityF = 0;
-        int moves = 0;
-        boolean isOrig = true;
-        
-        public SearchNode(Board initial, boolean isOrig) {
-            this.moves = 0;
-            this.board = initial;
-            this.isOrig = isOrig;
-            this.priorityF = initial.manhattan();
-        }
-        
-        public SearchNode(SearchNode priorSn, Board board) {
-            this.priorSn = priorSn;
-            this.board = board;
-            this.moves = priorSn.moves+1;
-            this.priorityF = board.manhattan() + this.moves;
-            this.isOrig = priorSn.isOrig;
-        }
-
-        @Override
-        public int compareTo(SearchNode sn) {
-            if (this.priorityF < sn.priorityF) 
-                return -1;
-            if (this.priorityF > sn.priorityF) 
-                return 1;
-            return 0;
-        }
-    }
-}
\ No newline at end of file
+}
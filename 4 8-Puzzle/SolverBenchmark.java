@@ -0,0 +1,101 @@
+/*
+ * Times the solver on a set of puzzle files. For each file prints the
+ * number of moves, the time to solve it and the nodes generated with the
+ * BucketQueue open list and with a binary heap (LongMinPQ, ties broken the
+ * same way), and the cost per generated node of Board.neighbors() plus
+ * the heuristic, measured on a random walk from the initial board.
+ *
+ * Usage: java SolverBenchmark puzzle1.txt puzzle2.txt ...
+ */
+
+public class SolverBenchmark {
+
+    private static final int WALK = 1000000;   // nodes generated per file
+
+    private static long sink;                  // keeps the walk observable
+
+    // read a board in the format of the puzzle files
+    private static Board read(String filename) {
+        In in = new In(filename);
+        int N = in.readInt();
+        int[][] blocks = new int[N][N];
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                blocks[i][j] = in.readShort();
+        return new Board(blocks);
+    }
+
+    // binary heap open list with the same order as BucketQueue, keyed by
+    // f in bits 40 and up, h in bits 32-39 and the id below
+    private static class HeapOpenList implements OpenList {
+        private final LongMinPQ pq = new LongMinPQ();
+
+        public boolean isEmpty() { return pq.isEmpty(); }
+        public int size()        { return pq.size();    }
+        public void clear()      { pq.clear();          }
+
+        public void insert(int id, int f, int h) {
+            pq.insert(((long) f << 40) | ((long) h << 32) | (id & 0xFFFFFFFFL));
+        }
+
+        public long delMin() {
+            long key = pq.delMin();
+            return ((key >>> 40) << 32) | (key & 0xFFFFFFFFL);
+        }
+    }
+
+    // average nanoseconds to generate a neighbor and evaluate it
+    private static double nodeCost(Board initial) {
+        java.util.Random random = new java.util.Random(0);
+        Board b = initial;
+        long sum = 0;
+        int generated = 0;
+        long start = System.nanoTime();
+        while (generated < WALK) {
+            Board next = null;
+            int seen = 0;
+            for (Board n : b.neighbors()) {
+                sum += n.manhattan();
+                generated++;
+                if (random.nextInt(++seen) == 0)
+                    next = n;
+            }
+            b = next;
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += sum;
+        return (double) elapsed / generated;
+    }
+
+    public static void main(String[] args) {
+        double total = 0.0, totalHeap = 0.0;
+        for (String filename : args) {
+            Board initial = read(filename);
+            double node = nodeCost(initial);
+
+            Stopwatch timer = new Stopwatch();
+            Solver solver = new Solver(initial, null, null, null,
+                                       new BucketQueue(), Integer.MAX_VALUE,
+                                       Long.MAX_VALUE);
+            double time = timer.elapsedTime();
+            total += time;
+
+            timer = new Stopwatch();
+            Solver heap = new Solver(initial, null, null, null,
+                                     new HeapOpenList(), Integer.MAX_VALUE,
+                                     Long.MAX_VALUE);
+            double timeHeap = timer.elapsedTime();
+            totalHeap += timeHeap;
+            if (heap.moves() != solver.moves())
+                throw new IllegalStateException("Open lists disagree on "
+                        + filename);
+
+            StdOut.printf("%-30s moves = %3d  buckets = %7.3fs %9d  "
+                          + "heap = %7.3fs %9d  node = %6.1fns\n",
+                          filename, solver.moves(), time, solver.nodes(),
+                          timeHeap, heap.nodes(), node);
+        }
+        StdOut.printf("total time: buckets = %.3fs  heap = %.3fs\n", total,
+                      totalHeap);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Java Flight Recorder event committed at the end of every Solver run,
+ * with its final SolverStats. Recorded only while a recording has the
+ * event enabled, for example with
+ *
+ *     java -XX:StartFlightRecording:filename=solver.jfr Solver puzzle.txt
+ *
+ * and shown under "Slider Puzzle" by jfr print or JDK Mission Control.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("puzzle.Solver")
+@Label("Solver Run")
+@Category("Slider Puzzle")
+@Description("One A* search by Solver")
+class SolverEvent extends jdk.jfr.Event {
+
+    @Label("Dimension")
+    int dimension;
+
+    @Label("Moves")
+    @Description("Moves of the solution, -1 if none was found")
+    int moves;
+
+    @Label("Expanded")
+    long expanded;
+
+    @Label("Generated")
+    long generated;
+
+    @Label("Duplicates")
+    long duplicates;
+
+    @Label("Nodes")
+    int nodes;
+
+    @Label("Peak Open")
+    int peakOpen;
+
+    @Label("Nodes per Second")
+    double nodesPerSecond;
+
+    @Label("Heuristic Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long heuristicNanos;
+
+    // copy the final counters of a run
+    void set(int dimension, int moves, SolverStats stats) {
+        this.dimension = dimension;
+        this.moves = moves;
+        expanded = stats.expanded();
+        generated = stats.generated();
+        duplicates = stats.duplicates();
+        nodes = stats.nodes();
+        peakOpen = stats.peakOpen();
+        nodesPerSecond = stats.nodesPerSecond();
+        heuristicNanos = stats.heuristicNanos();
+    }
+}
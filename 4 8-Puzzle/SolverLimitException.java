@@ -0,0 +1,21 @@
+/*
+ * Thrown by a Solver that gave up because the search grew past its node
+ * limit or ran past its deadline, as opposed to failing.
+ */
+
+public class SolverLimitException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean timeout;
+
+    SolverLimitException(String message, boolean timeout) {
+        super(message);
+        this.timeout = timeout;
+    }
+
+    // did the solver run out of time (rather than nodes)?
+    public boolean isTimeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,14 @@
+/*
+ * Receives progress reports from a running Solver. Reports come on the
+ * solving thread, so they should return quickly; the stats object is
+ * reused and only valid during the call.
+ */
+
+public interface SolverListener {
+
+    // called every Solver.REPORT expanded nodes
+    void progress(SolverStats stats);
+
+    // called once when the search is over, also if it gave up on a limit
+    void finished(SolverStats stats);
+}
@@ -0,0 +1,75 @@
+/*
+ * Counters of one Solver run, kept up to date while it searches and
+ * handed to a SolverListener on every progress report.
+ *
+ * A generated node is a neighbor of an expanded one; it is a duplicate
+ * when its board was already in the node table with no more moves. The
+ * time spent in the heuristic is sampled on one expansion in 64 and
+ * scaled up, so that timing it does not slow every expansion down.
+ */
+
+public class SolverStats {
+
+    long expanded;
+    long generated;
+    long duplicates;
+    int nodes;
+    int open;
+    int peakOpen;
+    long elapsedNanos;
+    long heuristicNanos;
+
+    // nodes taken off the open list and expanded
+    public long expanded() {
+        return expanded;
+    }
+
+    // neighbors generated by expanded nodes
+    public long generated() {
+        return generated;
+    }
+
+    // generated neighbors whose board was already found in no more moves
+    public long duplicates() {
+        return duplicates;
+    }
+
+    // boards in the node table
+    public int nodes() {
+        return nodes;
+    }
+
+    // current number of open list entries
+    public int open() {
+        return open;
+    }
+
+    // largest number of open list entries so far
+    public int peakOpen() {
+        return peakOpen;
+    }
+
+    // time since the search started
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    // estimated time spent evaluating the heuristic
+    public long heuristicNanos() {
+        return heuristicNanos;
+    }
+
+    // expanded nodes per second of search
+    public double nodesPerSecond() {
+        if (elapsedNanos == 0) return 0.0;
+        return expanded * 1e9 / elapsedNanos;
+    }
+
+    public String toString() {
+        return String.format("expanded %d  generated %d  duplicates %d  "
+                + "nodes %d  open %d (peak %d)  %.0f nodes/s  "
+                + "heuristic %.3fs of %.3fs", expanded, generated, duplicates,
+                nodes, open, peakOpen, nodesPerSecond(), heuristicNanos / 1e9,
+                elapsedNanos / 1e9);
+    }
+}
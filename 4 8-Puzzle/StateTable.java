@@ -0,0 +1,179 @@
+/*
+ * The search nodes of a packed A* search, stored in parallel primitive
+ * arrays indexed by node id: the packed state, the blank index, the moves
+ * made so far, the heuristic estimate and the parent id. An open-addressing
+ * hash index maps each state to its node, so every board appears once and
+ * keeps the fewest moves found to it.
+ *
+ * Usage: java StateTable [N]
+ *        (checks that states keep their blank index on an N-by-N board)
+ */
+
+import java.util.Arrays;
+
+public class StateTable {
+
+    private final PackedBoard enc;
+    private final int words;
+
+    private long[] states;
+    private int[] blank;
+    private int[] moves;
+    private int[] h;
+    private int[] parent;
+    private int n;
+
+    private int[] index;            // node ids, -1 for an empty slot
+    private int mask;
+
+    // an empty table for states in the given encoding
+    public StateTable(PackedBoard enc) {
+        this.enc = enc;
+        this.words = enc.words();
+        int cap = 1 << 10;
+        states = new long[cap * words];
+        blank = new int[cap];
+        moves = new int[cap];
+        h = new int[cap];
+        parent = new int[cap];
+        index = new int[2 * cap];
+        Arrays.fill(index, -1);
+        mask = index.length - 1;
+    }
+
+    // number of nodes
+    public int size() {
+        return n;
+    }
+
+    // remove all nodes, keeping the allocated arrays for reuse
+    public void clear() {
+        n = 0;
+        Arrays.fill(index, -1);
+    }
+
+    // id of the node holding the state at s[off]; -1 if there is none
+    public int find(long[] s, int off) {
+        int slot = enc.hash(s, off) & mask;
+        while (index[slot] != -1) {
+            int id = index[slot];
+            if (enc.equal(states, id * words, s, off))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // add a node for the state at s[off], which must not be in the table,
+    // and return its id
+    public int add(long[] s, int off, int blankAt, int g, int est, int from) {
+        if (n == moves.length)
+            grow();
+        int id = n++;
+        System.arraycopy(s, off, states, id * words, words);
+        blank[id] = blankAt;
+        moves[id] = g;
+        h[id] = est;
+        parent[id] = from;
+        insert(id);
+        if (4L * n > 3L * index.length)
+            rehash();
+        return id;
+    }
+
+    // record a shorter path to node id
+    public void relax(int id, int g, int from) {
+        moves[id] = g;
+        parent[id] = from;
+    }
+
+    // copy the state of node id into s[off]
+    public void state(int id, long[] s, int off) {
+        System.arraycopy(states, id * words, s, off, words);
+    }
+
+    // decode the state of node id into a board
+    public Board board(int id) {
+        return enc.unpack(states, id * words);
+    }
+
+    public int blank(int id) {
+        return blank[id];
+    }
+
+    public int moves(int id) {
+        return moves[id];
+    }
+
+    public int h(int id) {
+        return h[id];
+    }
+
+    public int parent(int id) {
+        return parent[id];
+    }
+
+    private void insert(int id) {
+        int slot = enc.hash(states, id * words) & mask;
+        while (index[slot] != -1)
+            slot = (slot + 1) & mask;
+        index[slot] = id;
+    }
+
+    private void grow() {
+        int cap = 2 * moves.length;
+        states = Arrays.copyOf(states, cap * words);
+        blank = Arrays.copyOf(blank, cap);
+        moves = Arrays.copyOf(moves, cap);
+        h = Arrays.copyOf(h, cap);
+        parent = Arrays.copyOf(parent, cap);
+    }
+
+    // double the index to keep the load factor at most 3/4
+    private void rehash() {
+        index = new int[2 * index.length];
+        Arrays.fill(index, -1);
+        mask = index.length - 1;
+        for (int id = 0; id < n; id++)
+            insert(id);
+    }
+
+    // add the states the blank passes through as it snakes from the end of
+    // the goal of an N-by-N board (12 by default) to index 0, and check
+    // that every node keeps its blank index
+    public static void main(String[] args) {
+        int N = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        PackedBoard enc = new PackedBoard(N);
+        int[][] tiles = new int[N][N];
+        for (int i = 0; i < N*N - 1; i++)
+            tiles[i / N][i % N] = i + 1;
+        long[] s = new long[enc.words()];
+        enc.pack(new Board(tiles), s, 0);
+        StateTable nodes = new StateTable(enc);
+        int b = N*N - 1;
+        int id = nodes.add(s, 0, b, 0, 0, -1);
+        for (int row = N - 1; row >= 0; row--) {
+            int step = (N - 1 - row) % 2 == 0 ? -1 : 1;
+            for (int k = 1; k <= N; k++) {
+                int j = k < N ? b + step : b - N;
+                if (j < 0)
+                    break;
+                enc.slide(s, 0, b, j);
+                b = j;
+                id = nodes.add(s, 0, b, nodes.moves(id) + 1, 0, id);
+            }
+        }
+
+        long[] t = new long[enc.words()];
+        for (id = 0; id < nodes.size(); id++) {
+            nodes.state(id, t, 0);
+            if (nodes.blank(id) != enc.blank(t, 0)
+                || nodes.find(t, 0) != id)
+                throw new IllegalStateException("Node " + id + " has blank "
+                        + nodes.blank(id) + ", not " + enc.blank(t, 0));
+        }
+        System.out.println(N + "-by-" + N + ": " + nodes.size()
+                           + " states, blank indexes 0 to " + (N*N - 1)
+                           + " kept");
+    }
+}
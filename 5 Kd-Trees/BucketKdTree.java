@@ -0,0 +1,581 @@
+/*************************************************************************
+ * A 2d-tree whose leaves are buckets of up to B points, supporting
+ * insert, delete, range and nearest neighbor search, that can be saved
+ * to a file and loaded back in a few bulk copies.
+ *
+ * The whole tree lives in primitive arrays. Internal node i splits on
+ * axis[i] (0 for x, 1 for y) at split[i]: smaller coordinates go to
+ * lb[i], the rest to rt[i]. A child c >= 0 is an internal node; c < 0 is
+ * leaf ~c, whose points sit in slots [leaf*B, leaf*B + count[leaf]) of
+ * xs[] and ys[], so a search scans a bucket sequentially instead of
+ * chasing one node per point. A full bucket is split at the median of
+ * its wider side.
+ *
+ * Delete only sets the point's bit in the dead[] mask of its leaf
+ * (a tombstone); a full leaf drops its dead points before it is split.
+ * Once tombstones make up more than a quarter of the stored points, the
+ * live points are rebuilt into a balanced tree, so rebuilds cost O(1)
+ * amortized per delete.
+ *
+ * save() writes the arrays as they are:
+ *
+ *     int magic 'K' 'D' 'B' '1', int B, int size, int tombstones,
+ *     int root, int nodes, int leaves, then split[nodes] (double),
+ *     axis[nodes] (byte), lb[nodes], rt[nodes], count[leaves] (int),
+ *     dead[leaves] (long), xs[leaves*B], ys[leaves*B] (double)
+ *
+ * (big-endian), and load() maps the file and bulk copies them straight
+ * back, so restoring a tree takes about as long as reading the file.
+ *
+ * Usage: java BucketKdTree input.txt snapshot.kdb   (build, save, load)
+ *
+ ************************************************************************/
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class BucketKdTree {
+
+    private static final int MAGIC = 0x4B444231;    // "KDB1"
+    private static final int HEADER_BYTES = 28;
+    private static final int MAX_MAP = 1 << 30;     // bytes per mapping
+    private static final int DEFAULT_B = 32;
+
+    private final int B;                // bucket capacity, at most 64
+
+    private int root;                   // node, or ~leaf
+    private int nodes;
+    private double[] split;
+    private byte[] axis;
+    private int[] lb, rt;
+
+    private int leaves;
+    private int[] count;                // slots used, live or dead
+    private long[] dead;                // tombstone bit per slot
+    private double[] xs, ys;
+
+    private int size;                   // live points
+    private int tombstones;
+
+    // construct an empty set of points with buckets of 32 points
+    public BucketKdTree() {
+        this(DEFAULT_B);
+    }
+
+    // construct an empty set of points with buckets of B points
+    public BucketKdTree(int B) {
+        if (B < 2 || B > 64)
+            throw new IllegalArgumentException("Bucket size must be "
+                    + "between 2 and 64");
+        this.B = B;
+        clear(1, 1);
+        root = newLeaf();
+    }
+
+    // construct a balanced tree of the given points (duplicates are
+    // ignored, as by insert)
+    public BucketKdTree(Point2D[] points) {
+        this(DEFAULT_B);
+        Point2D[] a = points.clone();
+        for (Point2D p : a)
+            if (p == null)
+                throw new NullPointerException("Null point");
+        Arrays.sort(a);
+        int n = 0;
+        for (int i = 0; i < a.length; i++)
+            if (n == 0 || !a[i].equals(a[n-1]))
+                a[n++] = a[i];
+        double[] px = new double[n], py = new double[n];
+        for (int i = 0; i < n; i++) {
+            px[i] = a[i].x();
+            py[i] = a[i].y();
+        }
+        rebuild(px, py, n);
+    }
+
+    // empty arrays for the given numbers of nodes and leaves
+    private void clear(int nodeCap, int leafCap) {
+        nodes = 0;
+        split = new double[nodeCap];
+        axis = new byte[nodeCap];
+        lb = new int[nodeCap];
+        rt = new int[nodeCap];
+        leaves = 0;
+        count = new int[leafCap];
+        dead = new long[leafCap];
+        xs = new double[leafCap * B];
+        ys = new double[leafCap * B];
+        size = 0;
+        tombstones = 0;
+    }
+
+    private int newLeaf() {
+        if (leaves == count.length) {
+            int cap = 2 * leaves;
+            count = Arrays.copyOf(count, cap);
+            dead = Arrays.copyOf(dead, cap);
+            xs = Arrays.copyOf(xs, cap * B);
+            ys = Arrays.copyOf(ys, cap * B);
+        }
+        count[leaves] = 0;
+        dead[leaves] = 0;
+        return ~leaves++;
+    }
+
+    private int newNode(int a, double v, int left, int right) {
+        if (nodes == split.length) {
+            int cap = 2 * nodes;
+            split = Arrays.copyOf(split, cap);
+            axis = Arrays.copyOf(axis, cap);
+            lb = Arrays.copyOf(lb, cap);
+            rt = Arrays.copyOf(rt, cap);
+        }
+        split[nodes] = v;
+        axis[nodes] = (byte) a;
+        lb[nodes] = left;
+        rt[nodes] = right;
+        return nodes++;
+    }
+
+    // is the set empty?
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // number of points in the set
+    public int size() {
+        return size;
+    }
+
+    private static double key(double x, double y, int a) {
+        return a == 0 ? x : y;
+    }
+
+    // leaf whose cell holds (x, y)
+    private int leafOf(double x, double y) {
+        int c = root;
+        while (c >= 0)
+            c = key(x, y, axis[c]) < split[c] ? lb[c] : rt[c];
+        return ~c;
+    }
+
+    // slot of the live point (x, y) in the leaf, -1 if it is not there
+    private int slotOf(int leaf, double x, double y) {
+        int base = leaf * B;
+        for (int i = 0; i < count[leaf]; i++)
+            if (xs[base + i] == x && ys[base + i] == y
+                && (dead[leaf] & (1L << i)) == 0)
+                return i;
+        return -1;
+    }
+
+    // does the set contain point p?
+    public boolean contains(Point2D p) {
+        return slotOf(leafOf(p.x(), p.y()), p.x(), p.y()) >= 0;
+    }
+
+    // add the point to the set (if it is not already in the set)
+    public void insert(Point2D p) {
+        if (p == null)
+            throw new NullPointerException("Null point");
+        double x = p.x(), y = p.y();
+        int parent = -1;
+        boolean left = false;
+        int c = root;
+        while (c >= 0) {
+            parent = c;
+            left = key(x, y, axis[c]) < split[c];
+            c = left ? lb[c] : rt[c];
+        }
+        int leaf = ~c;
+        if (slotOf(leaf, x, y) >= 0)
+            return;
+        if (count[leaf] == B && dead[leaf] != 0)
+            compact(leaf);
+        if (count[leaf] < B) {
+            int i = count[leaf]++;
+            xs[leaf * B + i] = x;
+            ys[leaf * B + i] = y;
+            size++;
+            return;
+        }
+
+        // split the full bucket plus p into two leaves
+        double[] px = new double[B + 1], py = new double[B + 1];
+        System.arraycopy(xs, leaf * B, px, 0, B);
+        System.arraycopy(ys, leaf * B, py, 0, B);
+        px[B] = x;
+        py[B] = y;
+        int a = partition(px, py, 0, B + 1);
+        int m = splitAt;
+        int other = ~newLeaf();
+        fill(leaf, px, py, 0, m);
+        fill(other, px, py, m, B + 1);
+        int n = newNode(a, splitValue, ~leaf, ~other);
+        if (parent < 0)       root = n;
+        else if (left)        lb[parent] = n;
+        else                  rt[parent] = n;
+        size++;
+    }
+
+    // remove point p from the set; returns whether it was in it
+    public boolean delete(Point2D p) {
+        int leaf = leafOf(p.x(), p.y());
+        int i = slotOf(leaf, p.x(), p.y());
+        if (i < 0)
+            return false;
+        dead[leaf] |= 1L << i;
+        size--;
+        tombstones++;
+        if (4L * tombstones > size + tombstones)
+            rebuild();
+        return true;
+    }
+
+    // move the live points of a leaf to the front of its slots
+    private void compact(int leaf) {
+        int base = leaf * B, n = 0;
+        for (int i = 0; i < count[leaf]; i++)
+            if ((dead[leaf] & (1L << i)) == 0) {
+                xs[base + n] = xs[base + i];
+                ys[base + n] = ys[base + i];
+                n++;
+            }
+        tombstones -= count[leaf] - n;
+        count[leaf] = n;
+        dead[leaf] = 0;
+    }
+
+    // copy p[from..to) into the slots of a leaf
+    private void fill(int leaf, double[] px, double[] py, int from, int to) {
+        System.arraycopy(px, from, xs, leaf * B, to - from);
+        System.arraycopy(py, from, ys, leaf * B, to - from);
+        count[leaf] = to - from;
+        dead[leaf] = 0;
+    }
+
+    // rebuild a balanced tree of the live points
+    private void rebuild() {
+        double[] px = new double[size], py = new double[size];
+        int n = 0;
+        for (int leaf = 0; leaf < leaves; leaf++)
+            for (int i = 0; i < count[leaf]; i++)
+                if ((dead[leaf] & (1L << i)) == 0) {
+                    px[n] = xs[leaf * B + i];
+                    py[n] = ys[leaf * B + i];
+                    n++;
+                }
+        rebuild(px, py, n);
+    }
+
+    // replace the tree by a balanced one of the distinct points p[0..n)
+    private void rebuild(double[] px, double[] py, int n) {
+        int leafCap = Math.max(1, 2 * n / B + 1);
+        clear(leafCap, leafCap);
+        root = build(px, py, 0, n);
+        size = n;
+    }
+
+    private int build(double[] px, double[] py, int lo, int hi) {
+        if (hi - lo <= B) {
+            int leaf = ~newLeaf();
+            fill(leaf, px, py, lo, hi);
+            return ~leaf;
+        }
+        int a = partition(px, py, lo, hi);
+        int m = splitAt;
+        double v = splitValue;
+        int left = build(px, py, lo, m);
+        int right = build(px, py, m, hi);
+        return newNode(a, v, left, right);
+    }
+
+    // set by partition(): first index of the right side and split value
+    private int splitAt;
+    private double splitValue;
+
+    // partition the distinct points p[lo..hi), at least two, on the axis
+    // where they spread the most, about a median value v chosen so both
+    // sides are non-empty: p[lo..splitAt) < v <= p[splitAt..hi) on that
+    // axis; returns the axis and leaves v in splitValue
+    private int partition(double[] px, double[] py, int lo, int hi) {
+        double xmin = px[lo], xmax = xmin, ymin = py[lo], ymax = ymin;
+        for (int i = lo + 1; i < hi; i++) {
+            xmin = Math.min(xmin, px[i]);
+            xmax = Math.max(xmax, px[i]);
+            ymin = Math.min(ymin, py[i]);
+            ymax = Math.max(ymax, py[i]);
+        }
+        int a = xmax - xmin >= ymax - ymin ? 0 : 1;
+        double[] key = a == 0 ? px : py, other = a == 0 ? py : px;
+
+        int k = lo + (hi - lo) / 2;
+        select(key, other, lo, hi - 1, k);
+        double v = key[k];
+        int m = lo;
+        for (int i = lo; i < hi; i++)
+            if (key[i] < v)
+                exch(key, other, m++, i);
+        if (m == lo) {
+            // v is the smallest value: split above it instead
+            for (int i = lo; i < hi; i++)
+                if (key[i] == v)
+                    exch(key, other, m++, i);
+            v = Double.POSITIVE_INFINITY;
+            for (int i = m; i < hi; i++)
+                v = Math.min(v, key[i]);
+        }
+        splitAt = m;
+        splitValue = v;
+        return a;
+    }
+
+    // quickselect on key[lo..hi], carrying other[] along
+    private static void select(double[] key, double[] other, int lo, int hi,
+                               int k) {
+        while (hi > lo) {
+            int mid = lo + (hi - lo) / 2;
+            if (key[mid] < key[lo]) exch(key, other, mid, lo);
+            if (key[hi]  < key[lo]) exch(key, other, hi, lo);
+            if (key[hi]  < key[mid]) exch(key, other, hi, mid);
+            exch(key, other, lo, mid);
+
+            double v = key[lo];
+            int i = lo, j = hi + 1;
+            while (true) {
+                while (key[++i] < v)
+                    if (i == hi) break;
+                while (v < key[--j])
+                    if (j == lo) break;
+                if (i >= j) break;
+                exch(key, other, i, j);
+            }
+            exch(key, other, lo, j);
+
+            if      (j > k) hi = j - 1;
+            else if (j < k) lo = j + 1;
+            else            return;
+        }
+    }
+
+    private static void exch(double[] a, double[] b, int i, int j) {
+        double t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+        t = b[i];
+        b[i] = b[j];
+        b[j] = t;
+    }
+
+    // all points that are inside the rectangle
+    public Iterable<Point2D> range(RectHV rect) {
+        Queue<Point2D> pointsInRect = new Queue<Point2D>();
+        range(root, rect, pointsInRect);
+        return pointsInRect;
+    }
+
+    private void range(int c, RectHV rect, Queue<Point2D> pointsInRect) {
+        if (c < 0) {
+            int leaf = ~c, base = leaf * B;
+            for (int i = 0; i < count[leaf]; i++) {
+                double x = xs[base + i], y = ys[base + i];
+                if (x >= rect.xmin() && x <= rect.xmax()
+                    && y >= rect.ymin() && y <= rect.ymax()
+                    && (dead[leaf] & (1L << i)) == 0)
+                    pointsInRect.enqueue(new Point2D(x, y));
+            }
+            return;
+        }
+        double min = axis[c] == 0 ? rect.xmin() : rect.ymin();
+        double max = axis[c] == 0 ? rect.xmax() : rect.ymax();
+        if (min < split[c])
+            range(lb[c], rect, pointsInRect);
+        if (max >= split[c])
+            range(rt[c], rect, pointsInRect);
+    }
+
+    // a nearest neighbor in the set to point p; null if the set is empty
+    public Point2D nearest(Point2D p) {
+        if (size == 0)
+            return null;
+        // squared distance, x and y of the champion
+        double[] best = { Double.POSITIVE_INFINITY, 0, 0 };
+        nearest(root, p.x(), p.y(), 0.0, new double[2], best);
+        return new Point2D(best[1], best[2]);
+    }
+
+    // search c, whose cell is at squared distance rd from (x, y), off[a]
+    // being the offset from the cell on axis a
+    private void nearest(int c, double x, double y, double rd, double[] off,
+                         double[] best) {
+        if (rd >= best[0])
+            return;
+        if (c < 0) {
+            int leaf = ~c, base = leaf * B;
+            for (int i = 0; i < count[leaf]; i++) {
+                double dx = xs[base + i] - x, dy = ys[base + i] - y;
+                double d = dx*dx + dy*dy;
+                if (d < best[0] && (dead[leaf] & (1L << i)) == 0) {
+                    best[0] = d;
+                    best[1] = xs[base + i];
+                    best[2] = ys[base + i];
+                }
+            }
+            return;
+        }
+        int a = axis[c];
+        double diff = key(x, y, a) - split[c];
+        nearest(diff < 0 ? lb[c] : rt[c], x, y, rd, off, best);
+        double old = off[a];
+        double farRd = rd - old * old + diff * diff;
+        if (farRd < best[0]) {
+            off[a] = diff;
+            nearest(diff < 0 ? rt[c] : lb[c], x, y, farRd, off, best);
+            off[a] = old;
+        }
+    }
+
+    // write the tree to a file
+    public void save(String filename) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(filename), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(B);
+            out.writeInt(size);
+            out.writeInt(tombstones);
+            out.writeInt(root);
+            out.writeInt(nodes);
+            out.writeInt(leaves);
+            for (int i = 0; i < nodes; i++)
+                out.writeDouble(split[i]);
+            out.write(axis, 0, nodes);
+            for (int i = 0; i < nodes; i++)
+                out.writeInt(lb[i]);
+            for (int i = 0; i < nodes; i++)
+                out.writeInt(rt[i]);
+            for (int i = 0; i < leaves; i++)
+                out.writeInt(count[i]);
+            for (int i = 0; i < leaves; i++)
+                out.writeLong(dead[i]);
+            for (int i = 0; i < leaves * B; i++)
+                out.writeDouble(xs[i]);
+            for (int i = 0; i < leaves * B; i++)
+                out.writeDouble(ys[i]);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + filename,
+                    e);
+        } finally {
+            if (out != null)
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Could not write "
+                            + filename, e);
+                }
+        }
+    }
+
+    // load a tree written by save()
+    public static BucketKdTree load(String filename) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(filename, "r");
+            FileChannel ch = file.getChannel();
+            if (ch.size() < HEADER_BYTES)
+                throw new IllegalArgumentException(filename + " is not a "
+                        + "kd-tree snapshot");
+            MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                                         HEADER_BYTES);
+            if (in.getInt() != MAGIC)
+                throw new IllegalArgumentException(filename + " is not a "
+                        + "kd-tree snapshot");
+            BucketKdTree t = new BucketKdTree(in.getInt());
+            int size = in.getInt(), tombstones = in.getInt();
+            int root = in.getInt(), nodes = in.getInt(), leaves = in.getInt();
+            long slots = (long) leaves * t.B;
+            if (nodes < 0 || leaves < 1 || slots > Integer.MAX_VALUE
+                || ch.size() < HEADER_BYTES + 17L * nodes + 12L * leaves
+                               + 16L * slots)
+                throw new IllegalArgumentException("Truncated snapshot "
+                        + filename);
+            t.clear(Math.max(1, nodes), leaves);
+            t.size = size;
+            t.tombstones = tombstones;
+            t.root = root;
+            t.nodes = nodes;
+            t.leaves = leaves;
+
+            long pos = HEADER_BYTES;
+            pos = readArray(ch, pos, 8, nodes, t.split);
+            pos = readArray(ch, pos, 1, nodes, t.axis);
+            pos = readArray(ch, pos, 4, nodes, t.lb);
+            pos = readArray(ch, pos, 4, nodes, t.rt);
+            pos = readArray(ch, pos, 4, leaves, t.count);
+            pos = readArray(ch, pos, 8, leaves, t.dead);
+            pos = readArray(ch, pos, 8, (int) slots, t.xs);
+            readArray(ch, pos, 8, (int) slots, t.ys);
+            return t;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + filename, e);
+        } finally {
+            if (file != null)
+                try {
+                    file.close();   // the arrays are copied already
+                } catch (IOException e) {
+                    // nothing was written, so nothing is lost
+                }
+        }
+    }
+
+    // bulk copy n elements of the given width at byte offset pos into dst,
+    // one mapping of at most MAX_MAP bytes at a time; returns the offset
+    // after them
+    private static long readArray(FileChannel ch, long pos, int width, int n,
+                                  Object dst) throws IOException {
+        int done = 0;
+        while (done < n) {
+            int count = Math.min(n - done, MAX_MAP / width);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY,
+                    pos + (long) width * done, (long) width * count);
+            if (dst instanceof double[])
+                buf.asDoubleBuffer().get((double[]) dst, done, count);
+            else if (dst instanceof long[])
+                buf.asLongBuffer().get((long[]) dst, done, count);
+            else if (dst instanceof int[])
+                buf.asIntBuffer().get((int[]) dst, done, count);
+            else
+                buf.get((byte[]) dst, done, count);
+            done += count;
+        }
+        return pos + (long) width * n;
+    }
+
+    // build a tree of the points in a file, save it, load it back and
+    // check the copy
+    public static void main(String[] args) {
+        Point2D[] points = Point2DFile.readPoints(args[0]);
+        Stopwatch timer = new Stopwatch();
+        BucketKdTree tree = new BucketKdTree(points);
+        StdOut.printf("build %7.3fs  %d points\n", timer.elapsedTime(),
+                      tree.size());
+        timer = new Stopwatch();
+        tree.save(args[1]);
+        StdOut.printf("save  %7.3fs\n", timer.elapsedTime());
+        timer = new Stopwatch();
+        BucketKdTree copy = load(args[1]);
+        StdOut.printf("load  %7.3fs\n", timer.elapsedTime());
+        for (int i = 0; i < 1000; i++) {
+            Point2D q = new Point2D(StdRandom.uniform(), StdRandom.uniform());
+            if (!tree.nearest(q).equals(copy.nearest(q)))
+                throw new IllegalStateException("Loaded tree differs");
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*************************************************************************
+ * A 2d-tree of points in the unit square that can be read by any number
+ * of threads while other threads insert.
+ *
+ * Nodes are immutable. An insert copies the nodes on the path from the
+ * root to the new leaf, shares every other subtree with the old tree,
+ * and then publishes the new root through a volatile field. A query reads
+ * the root once and searches that snapshot, so it never waits, never
+ * sees a half-done insert, and runs as fast as on a KdTree. Inserts take
+ * the lock of the tree, one at a time, and cost O(depth) new nodes.
+ *
+ * Points that arrive in sorted or clustered order would make the tree
+ * deep, so inserts keep it weight-balanced the way a scapegoat tree does:
+ * the highest node on the insert path with a child holding more than
+ * ALPHA of its points is rebuilt balanced (see KdTree(Point2D[])) instead
+ * of copied. The rebuilt subtree is new too, so readers of older
+ * snapshots are not disturbed, the depth stays below log N / log(1/ALPHA)
+ * + 1 at all times, and an insert costs O(log^2 N) amortized. Points on
+ * a common splitting line are ordered by their other coordinate, so they
+ * still divide evenly between the subtrees.
+ *
+ ************************************************************************/
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ConcurrentKdTree {
+
+    private static final double ALPHA = 0.75;   // largest child share
+
+    private volatile Node root;
+
+    private static class Node {
+        private final Point2D p;
+        private final Node lb, rt;
+        private final RectHV rect;
+        private final boolean compareByX;
+        private final int N;
+
+        public Node(Point2D p, Node lb, Node rt, RectHV rect,
+                    boolean compareByX) {
+            this.p = p;
+            this.lb = lb;
+            this.rt = rt;
+            this.rect = rect;
+            this.compareByX = compareByX;
+            this.N = 1 + size(lb) + size(rt);
+        }
+    }
+
+    // construct an empty set of points
+    public ConcurrentKdTree() {
+        root = null;
+    }
+
+    // is the set empty?
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    // number of points in the set
+    public int size() {
+        return size(root);
+    }
+
+    private static int size(Node x) {
+        if (x == null) return 0;
+        else           return x.N;
+    }
+
+    // add the point to the set (if it is not already in the set)
+    public synchronized void insert(Point2D p) {
+        if (p == null)
+            throw new NullPointerException("Null point");
+        if (p.x() < 0 || p.x() > 1 || p.y() < 0 || p.y() > 1)
+            throw new IllegalArgumentException(p + " is outside the unit "
+                                               + "square");
+        if (contains(p))
+            return;
+        if (root == null)
+            root = new Node(p, null, null, new RectHV(0, 0, 1, 1), true);
+        else
+            root = insert(root, p);
+    }
+
+    // copy of the subtree r, which does not contain p, with p added
+    private static Node insert(Node r, Point2D p) {
+        boolean less = less(p, r);
+        Node child = less ? r.lb : r.rt;
+        // the highest node the insert would unbalance is the scapegoat
+        if (size(child) + 1 > ALPHA * (r.N + 1))
+            return rebuild(r, p);
+        if (less) {
+            Node lb = r.lb == null 
+                    ? new Node(p, null, null, lower(r.rect, r.p, r.compareByX),
+                               !r.compareByX)
+                    : insert(r.lb, p);
+            return new Node(r.p, lb, r.rt, r.rect, r.compareByX);
+        } else {
+            Node rt = r.rt == null
+                    ? new Node(p, null, null, upper(r.rect, r.p, r.compareByX),
+                               !r.compareByX)
+                    : insert(r.rt, p);
+            return new Node(r.p, r.lb, rt, r.rect, r.compareByX);
+        }
+    }
+
+    // balanced copy of the subtree r with p added
+    private static Node rebuild(Node r, Point2D p) {
+        Point2D[] a = new Point2D[r.N + 1];
+        collect(r, a, 0);
+        a[r.N] = p;
+        return build(a, 0, a.length, r.compareByX, r.rect);
+    }
+
+    // copy the points of subtree x into a[i..]; returns the next free index
+    private static int collect(Node x, Point2D[] a, int i) {
+        if (x == null)
+            return i;
+        a[i++] = x.p;
+        i = collect(x.lb, a, i);
+        return collect(x.rt, a, i);
+    }
+
+    // balanced subtree of the distinct points a[lo..hi)
+    private static Node build(Point2D[] a, int lo, int hi,
+                              boolean compareByX, RectHV rect) {
+        if (lo >= hi)
+            return null;
+        int m = split(a, lo, hi, compareByX);
+        Node lb = build(a, lo, m, !compareByX, 
+                        lower(rect, a[m], compareByX));
+        Node rt = build(a, m + 1, hi, !compareByX, 
+                        upper(rect, a[m], compareByX));
+        return new Node(a[m], lb, rt, rect, compareByX);
+    }
+
+    // is p before the point of node r along its splitting coordinate?
+    // Ties are broken on the other coordinate, so that points on a common
+    // splitting line still divide evenly instead of all going right and
+    // making every insert rebuild
+    private static boolean less(Point2D p, Node r) {
+        return compare(p, r.p, r.compareByX) < 0;
+    }
+
+    private static int compare(Point2D p, Point2D q, boolean compareByX) {
+        int c = compareByX ? Double.compare(p.x(), q.x())
+                           : Double.compare(p.y(), q.y());
+        if (c != 0)
+            return c;
+        return compareByX ? Double.compare(p.y(), q.y())
+                          : Double.compare(p.x(), q.x());
+    }
+
+    // rearrange the distinct points a[lo..hi) around their median m in
+    // the order of compare() so that a[lo..m) are before and a[m+1..hi)
+    // after a[m]; returns m
+    private static int split(Point2D[] a, int lo, int hi,
+                             boolean compareByX) {
+        int k = lo + (hi - lo) / 2;
+        hi--;
+        while (hi > lo) {
+            int mid = lo + (hi - lo) / 2;
+            if (compare(a[mid], a[lo], compareByX) < 0) exch(a, mid, lo);
+            if (compare(a[hi], a[lo], compareByX) < 0) exch(a, hi, lo);
+            if (compare(a[hi], a[mid], compareByX) < 0) exch(a, hi, mid);
+            exch(a, lo, mid);
+
+            Point2D v = a[lo];
+            int i = lo, j = hi + 1;
+            while (true) {
+                while (compare(a[++i], v, compareByX) < 0)
+                    if (i == hi) break;
+                while (compare(v, a[--j], compareByX) < 0)
+                    if (j == lo) break;
+                if (i >= j) break;
+                exch(a, i, j);
+            }
+            exch(a, lo, j);
+
+            if      (j > k) hi = j - 1;
+            else if (j < k) lo = j + 1;
+            else            break;
+        }
+        return k;
+    }
+
+    private static void exch(Point2D[] a, int i, int j) {
+        Point2D t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    // the part of rect left of (below) the splitting line through p
+    private static RectHV lower(RectHV rect, Point2D p, boolean compareByX) {
+        if (compareByX)
+            return new RectHV(rect.xmin(), rect.ymin(), p.x(), rect.ymax());
+        else
+            return new RectHV(rect.xmin(), rect.ymin(), rect.xmax(), p.y());
+    }
+
+    // the part of rect right of (above) the splitting line through p
+    private static RectHV upper(RectHV rect, Point2D p, boolean compareByX) {
+        if (compareByX)
+            return new RectHV(p.x(), rect.ymin(), rect.xmax(), rect.ymax());
+        else
+            return new RectHV(rect.xmin(), p.y(), rect.xmax(), rect.ymax());
+    }
+
+    // does the set contain point p?
+    public boolean contains(Point2D p) {
+        Node r = root;
+        while (r != null) {
+            if (r.p.equals(p))
+                return true;
+            r = less(p, r) ? r.lb : r.rt;
+        }
+        return false;
+    }
+
+    // all points that are inside the rectangle
+    public Iterable<Point2D> range(RectHV rect) {
+        final Queue<Point2D> pointsInRect = new Queue<Point2D>();
+        range(rect, new PointVisitor() {
+            public boolean visit(Point2D p) {
+                pointsInRect.enqueue(p);
+                return true;
+            }
+        });
+        return pointsInRect;
+    }
+
+    // hand each point inside the rectangle to visitor until it returns
+    // false; returns false if the search was stopped that way
+    public boolean range(RectHV rect, PointVisitor visitor) {
+        return range(root, rect, visitor);
+    }
+
+    private static boolean range(Node n, RectHV qRect, PointVisitor visitor) {
+        if (n == null || !qRect.intersects(n.rect))
+            return true;
+        if (qRect.contains(n.p) && !visitor.visit(n.p))
+            return false;
+        return range(n.lb, qRect, visitor) && range(n.rt, qRect, visitor);
+    }
+
+    // a nearest neighbor in the set to point p; null if the set is empty
+    public Point2D nearest(Point2D p) {
+        Node r = root;
+        if (r == null) return null;
+        return nearest(r, p, r.p);
+    }
+
+    private static Point2D nearest(Node r, Point2D p, Point2D champion) {
+        if (r == null)
+            return champion;
+        double best = champion.distanceSquaredTo(p);
+        if (r.rect.distanceSquaredTo(p) >= best)
+            return champion;
+        Point2D newChamp = champion;
+        if (r.p.distanceSquaredTo(p) < best)
+            newChamp = r.p;
+        boolean lbFirst = r.compareByX ? p.x() < r.p.x() : p.y() < r.p.y();
+        if (lbFirst) {
+            newChamp = nearest(r.lb, p, newChamp);
+            newChamp = nearest(r.rt, p, newChamp);
+        } else {
+            newChamp = nearest(r.rt, p, newChamp);
+            newChamp = nearest(r.lb, p, newChamp);
+        }
+        return newChamp;
+    }
+
+    // nearest() latency of reader threads while one thread inserts points
+    // in sorted order, the worst case for an unbalanced tree
+    public static void main(String[] args) throws InterruptedException {
+        final int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final int readers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        final ConcurrentKdTree tree = new ConcurrentKdTree();
+
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < n; i++)
+                    tree.insert(new Point2D((double) i / n,
+                                            (i * 0.6180339887) % 1.0));
+            }
+        });
+        final long[][] latency = new long[readers][];
+        Thread[] threads = new Thread[readers];
+        final AtomicBoolean done = new AtomicBoolean();
+        for (int t = 0; t < readers; t++) {
+            final int id = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    Random random = new Random(id);
+                    long[] ns = new long[1 << 16];
+                    int count = 0;
+                    while (!done.get()) {
+                        Point2D q = new Point2D(random.nextDouble(),
+                                                random.nextDouble());
+                        long start = System.nanoTime();
+                        tree.nearest(q);
+                        ns[count++ & (ns.length - 1)] = System.nanoTime()
+                                                        - start;
+                    }
+                    latency[id] = Arrays.copyOf(ns, Math.min(count,
+                                                             ns.length));
+                }
+            });
+            threads[t].start();
+        }
+        Stopwatch timer = new Stopwatch();
+        writer.start();
+        writer.join();
+        double seconds = timer.elapsedTime();
+        done.set(true);
+        for (Thread t : threads)
+            t.join();
+
+        long[] all = new long[0];
+        for (long[] l : latency) {
+            int k = all.length;
+            all = Arrays.copyOf(all, k + l.length);
+            System.arraycopy(l, 0, all, k, l.length);
+        }
+        Arrays.sort(all);
+        StdOut.printf("%d inserts in %.3fs, size %d\n", n, seconds,
+                      tree.size());
+        if (all.length > 0)
+            StdOut.printf("nearest over the last %d queries: p50 %.1fus  "
+                          + "p99 %.1fus\n", all.length,
+                          all[all.length / 2] / 1e3,
+                          all[(int) (all.length * 0.99)] / 1e3);
+    }
+}
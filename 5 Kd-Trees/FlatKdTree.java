@@ -0,0 +1,260 @@
+/*************************************************************************
+ * A static 2d-tree stored in two arrays of coordinates, xs[] and ys[],
+ * with no node objects. The tree is complete and laid out in breadth-
+ * first order: the children of node i are nodes 2i+1 and 2i+2, and nodes
+ * at even depth split on x, at odd depth on y. Each node is the median of
+ * its subtree along its coordinate, so the depth is O(log N), and the top
+ * levels that every query visits share a few cache lines.
+ *
+ * A node costs 16 bytes instead of well over 100 for a KdTree.Node with
+ * its Point2D and RectHV. Cell rectangles are not stored; nearest() keeps
+ * the bounds of the current cell as it descends and prunes a subtree as
+ * soon as its cell is no closer than the champion.
+ *
+ * Points equal to a node along its coordinate may be in either subtree,
+ * so searches go both ways on a tie.
+ *
+ * Usage: java FlatKdTree input.txt [queries]   (compares with KdTree)
+ *
+ ************************************************************************/
+
+import java.util.Arrays;
+
+public class FlatKdTree {
+
+    private final double[] xs, ys;
+    private final int N;
+
+    // construct the tree of the given points (duplicates are ignored)
+    public FlatKdTree(Point2D[] points) {
+        Point2D[] a = points.clone();
+        for (Point2D p : a)
+            if (p == null)
+                throw new NullPointerException("Null point");
+        Arrays.sort(a);
+        int n = 0;
+        for (int i = 0; i < a.length; i++)
+            if (n == 0 || !a[i].equals(a[n-1]))
+                a[n++] = a[i];
+
+        N = n;
+        xs = new double[n];
+        ys = new double[n];
+        double[] tx = new double[n], ty = new double[n];
+        for (int i = 0; i < n; i++) {
+            tx[i] = a[i].x();
+            ty[i] = a[i].y();
+        }
+        build(tx, ty, 0, n, 0, true);
+    }
+
+    // put the median of t[lo..hi) at node i and build its subtrees
+    private void build(double[] tx, double[] ty, int lo, int hi, int i,
+                       boolean compareByX) {
+        if (lo >= hi)
+            return;
+        int k = lo + leftSize(hi - lo);
+        if (compareByX) select(tx, ty, lo, hi - 1, k);
+        else            select(ty, tx, lo, hi - 1, k);
+        xs[i] = tx[k];
+        ys[i] = ty[k];
+        build(tx, ty, lo, k, 2*i + 1, !compareByX);
+        build(tx, ty, k + 1, hi, 2*i + 2, !compareByX);
+    }
+
+    // size of the left subtree of a complete binary tree of n nodes
+    private static int leftSize(int n) {
+        if (n <= 1)
+            return 0;
+        int full = Integer.highestOneBit(n);        // 2^height
+        int last = n - (full - 1);                  // nodes on the last level
+        return full/2 - 1 + Math.min(last, full/2);
+    }
+
+    // quickselect on key[lo..hi], carrying other[] along: puts the k-th
+    // smallest key at k, no larger keys before and no smaller keys after
+    private static void select(double[] key, double[] other, int lo, int hi,
+                               int k) {
+        while (hi > lo) {
+            int mid = lo + (hi - lo) / 2;
+            if (key[mid] < key[lo]) exch(key, other, mid, lo);
+            if (key[hi]  < key[lo]) exch(key, other, hi, lo);
+            if (key[hi]  < key[mid]) exch(key, other, hi, mid);
+            exch(key, other, lo, mid);
+
+            double v = key[lo];
+            int i = lo, j = hi + 1;
+            while (true) {
+                while (key[++i] < v)
+                    if (i == hi) break;
+                while (v < key[--j])
+                    if (j == lo) break;
+                if (i >= j) break;
+                exch(key, other, i, j);
+            }
+            exch(key, other, lo, j);
+
+            if      (j > k) hi = j - 1;
+            else if (j < k) lo = j + 1;
+            else            return;
+        }
+    }
+
+    private static void exch(double[] a, double[] b, int i, int j) {
+        double t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+        t = b[i];
+        b[i] = b[j];
+        b[j] = t;
+    }
+
+    // is the set empty?
+    public boolean isEmpty() {
+        return N == 0;
+    }
+
+    // number of points in the set
+    public int size() {
+        return N;
+    }
+
+    // does the set contain point p?
+    public boolean contains(Point2D p) {
+        return contains(0, true, p.x(), p.y());
+    }
+
+    private boolean contains(int i, boolean compareByX, double x, double y) {
+        while (i < N) {
+            if (xs[i] == x && ys[i] == y)
+                return true;
+            double v = compareByX ? x : y;
+            double line = compareByX ? xs[i] : ys[i];
+            if (v == line)
+                return contains(2*i + 1, !compareByX, x, y)
+                    || contains(2*i + 2, !compareByX, x, y);
+            i = v < line ? 2*i + 1 : 2*i + 2;
+            compareByX = !compareByX;
+        }
+        return false;
+    }
+
+    // all points that are inside the rectangle
+    public Iterable<Point2D> range(RectHV rect) {
+        Queue<Point2D> pointsInRect = new Queue<Point2D>();
+        range(0, true, rect, pointsInRect);
+        return pointsInRect;
+    }
+
+    private void range(int i, boolean compareByX, RectHV rect,
+                       Queue<Point2D> pointsInRect) {
+        if (i >= N)
+            return;
+        double x = xs[i], y = ys[i];
+        if (x >= rect.xmin() && x <= rect.xmax()
+            && y >= rect.ymin() && y <= rect.ymax())
+            pointsInRect.enqueue(new Point2D(x, y));
+        double line = compareByX ? x : y;
+        double min = compareByX ? rect.xmin() : rect.ymin();
+        double max = compareByX ? rect.xmax() : rect.ymax();
+        if (min <= line)
+            range(2*i + 1, !compareByX, rect, pointsInRect);
+        if (max >= line)
+            range(2*i + 2, !compareByX, rect, pointsInRect);
+    }
+
+    // a nearest neighbor in the set to point p; null if the set is empty
+    public Point2D nearest(Point2D p) {
+        if (N == 0)
+            return null;
+        double[] champion = { Double.POSITIVE_INFINITY, 0 };
+        nearest(0, true, p.x(), p.y(),
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, champion);
+        int best = (int) champion[1];
+        return new Point2D(xs[best], ys[best]);
+    }
+
+    // search node i, whose cell is [xmin, xmax] x [ymin, ymax]; champion
+    // holds the squared distance and the index of the closest point so far
+    private void nearest(int i, boolean compareByX, double x, double y,
+                         double xmin, double ymin, double xmax, double ymax,
+                         double[] champion) {
+        if (i >= N)
+            return;
+        double dx = x < xmin ? xmin - x : x > xmax ? x - xmax : 0.0;
+        double dy = y < ymin ? ymin - y : y > ymax ? y - ymax : 0.0;
+        if (dx*dx + dy*dy >= champion[0])
+            return;
+
+        dx = xs[i] - x;
+        dy = ys[i] - y;
+        double d = dx*dx + dy*dy;
+        if (d < champion[0]) {
+            champion[0] = d;
+            champion[1] = i;
+        }
+
+        // the child on the side of p first
+        int lb = 2*i + 1, rt = 2*i + 2;
+        if (compareByX) {
+            if (x < xs[i]) {
+                nearest(lb, false, x, y, xmin, ymin, xs[i], ymax,
+                        champion);
+                nearest(rt, false, x, y, xs[i], ymin, xmax, ymax,
+                        champion);
+            } else {
+                nearest(rt, false, x, y, xs[i], ymin, xmax, ymax,
+                        champion);
+                nearest(lb, false, x, y, xmin, ymin, xs[i], ymax,
+                        champion);
+            }
+        } else {
+            if (y < ys[i]) {
+                nearest(lb, true, x, y, xmin, ymin, xmax, ys[i],
+                        champion);
+                nearest(rt, true, x, y, xmin, ys[i], xmax, ymax,
+                        champion);
+            } else {
+                nearest(rt, true, x, y, xmin, ys[i], xmax, ymax,
+                        champion);
+                nearest(lb, true, x, y, xmin, ymin, xmax, ys[i],
+                        champion);
+            }
+        }
+    }
+
+    // compare query times with KdTree on the points in a file
+    public static void main(String[] args) {
+        Point2D[] points = Point2DFile.readPoints(args[0]);
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+        Stopwatch timer = new Stopwatch();
+        KdTree kdt = new KdTree(points);
+        StdOut.printf("KdTree     build %7.3fs\n", timer.elapsedTime());
+        timer = new Stopwatch();
+        FlatKdTree flat = new FlatKdTree(points);
+        StdOut.printf("FlatKdTree build %7.3fs\n", timer.elapsedTime());
+
+        Point2D[] q = new Point2D[queries];
+        for (int i = 0; i < queries; i++)
+            q[i] = new Point2D(StdRandom.uniform(), StdRandom.uniform());
+
+        Point2D[] expected = new Point2D[queries];
+        timer = new Stopwatch();
+        for (int i = 0; i < queries; i++)
+            expected[i] = kdt.nearest(q[i]);
+        StdOut.printf("KdTree     %d nearest %7.3fs\n", queries,
+                      timer.elapsedTime());
+        Point2D[] found = new Point2D[queries];
+        timer = new Stopwatch();
+        for (int i = 0; i < queries; i++)
+            found[i] = flat.nearest(q[i]);
+        StdOut.printf("FlatKdTree %d nearest %7.3fs\n", queries,
+                      timer.elapsedTime());
+        for (int i = 0; i < queries; i++)
+            if (found[i].distanceSquaredTo(q[i])
+                != expected[i].distanceSquaredTo(q[i]))
+                throw new IllegalStateException("Nearest points differ");
+    }
+}
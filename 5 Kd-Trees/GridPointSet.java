@@ -0,0 +1,286 @@
+/*************************************************************************
+ * Represents a set of points in the unit square using a uniform G-by-G
+ * grid of cells. The points of each cell are kept in two primitive arrays
+ * of coordinates, so a query scans memory sequentially instead of chasing
+ * tree nodes.
+ *
+ * Range search scans only the cells that overlap the query rectangle.
+ * Nearest neighbor search scans the cell of the query point and then the
+ * rings of cells around it, outward, until the champion is closer than
+ * anything in the next ring can be. For roughly uniform points both take
+ * about constant time per point found. The grid is doubled in each
+ * direction whenever the points average more than four per cell, so the
+ * cells stay small as the set grows; clustered points can still crowd
+ * a few cells.
+ *
+ * Usage: java GridPointSet input.txt [queries]
+ *        (compares with KdTree and PointSET)
+ *
+ ************************************************************************/
+
+import java.util.Arrays;
+
+public class GridPointSet {
+
+    private static final int MAX_LOAD = 4;      // points per cell on average
+
+    private int G;                      // cells per side
+    private double[][] cellX, cellY;    // points of each cell, row by row
+    private int[] cellN;
+    private int size;
+
+    // construct an empty set of points
+    public GridPointSet() {
+        grid(16);
+    }
+
+    // empty grid of G-by-G cells
+    private void grid(int G) {
+        this.G = G;
+        cellX = new double[G*G][];
+        cellY = new double[G*G][];
+        cellN = new int[G*G];
+    }
+
+    // is the set empty?
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // number of points in the set
+    public int size() {
+        return size;
+    }
+
+    // column or row of the cell holding coordinate v, clamped to the grid
+    private int index(double v) {
+        int i = (int) (v * G);
+        return i < 0 ? 0 : i >= G ? G - 1 : i;
+    }
+
+    // add the point to the set (if it is not already in the set)
+    public void insert(Point2D p) {
+        if (p == null)
+            throw new NullPointerException("Null point");
+        double x = p.x(), y = p.y();
+        if (x < 0 || x > 1 || y < 0 || y > 1)
+            throw new IllegalArgumentException(p + " is outside the unit "
+                    + "square");
+        if (contains(x, y))
+            return;
+        if (size >= MAX_LOAD * G * G)
+            regrid(2 * G);
+        add(index(y) * G + index(x), x, y);
+        size++;
+    }
+
+    private void add(int c, double x, double y) {
+        int n = cellN[c];
+        if (cellX[c] == null) {
+            cellX[c] = new double[MAX_LOAD];
+            cellY[c] = new double[MAX_LOAD];
+        } else if (n == cellX[c].length) {
+            cellX[c] = Arrays.copyOf(cellX[c], 2 * n);
+            cellY[c] = Arrays.copyOf(cellY[c], 2 * n);
+        }
+        cellX[c][n] = x;
+        cellY[c][n] = y;
+        cellN[c] = n + 1;
+    }
+
+    // move every point to a grid of G-by-G cells
+    private void regrid(int G) {
+        double[][] oldX = cellX, oldY = cellY;
+        int[] oldN = cellN;
+        grid(G);
+        for (int c = 0; c < oldN.length; c++)
+            for (int i = 0; i < oldN[c]; i++) {
+                double x = oldX[c][i], y = oldY[c][i];
+                add(index(y) * G + index(x), x, y);
+            }
+    }
+
+    // does the set contain point p?
+    public boolean contains(Point2D p) {
+        return contains(p.x(), p.y());
+    }
+
+    private boolean contains(double x, double y) {
+        int c = index(y) * G + index(x);
+        double[] xs = cellX[c], ys = cellY[c];
+        for (int i = 0; i < cellN[c]; i++)
+            if (xs[i] == x && ys[i] == y)
+                return true;
+        return false;
+    }
+
+    // all points that are inside the rectangle
+    public Iterable<Point2D> range(RectHV rect) {
+        Queue<Point2D> pointsInRect = new Queue<Point2D>();
+        double xmin = rect.xmin(), xmax = rect.xmax();
+        double ymin = rect.ymin(), ymax = rect.ymax();
+        if (xmax < 0 || xmin > 1 || ymax < 0 || ymin > 1)
+            return pointsInRect;
+        int col0 = index(xmin), col1 = index(xmax);
+        for (int row = index(ymin); row <= index(ymax); row++)
+            for (int col = col0; col <= col1; col++) {
+                int c = row * G + col;
+                double[] xs = cellX[c], ys = cellY[c];
+                for (int i = 0; i < cellN[c]; i++)
+                    if (xs[i] >= xmin && xs[i] <= xmax
+                        && ys[i] >= ymin && ys[i] <= ymax)
+                        pointsInRect.enqueue(new Point2D(xs[i], ys[i]));
+            }
+        return pointsInRect;
+    }
+
+    // a nearest neighbor in the set to point p; null if the set is empty
+    public Point2D nearest(Point2D p) {
+        if (size == 0)
+            return null;
+        double x = p.x(), y = p.y();
+        int col = index(x), row = index(y);
+        double w = 1.0 / G;
+
+        // distance from p to the nearest side of the block of cells
+        // scanned so far, which every point outside the block is beyond
+        double edge = Math.min(Math.min(x - col * w, (col + 1) * w - x),
+                               Math.min(y - row * w, (row + 1) * w - y));
+        edge = Math.max(edge, 0.0);     // p may be outside the unit square
+
+        // squared distance, x and y of the champion
+        double[] best = { Double.POSITIVE_INFINITY, 0, 0 };
+        scan(row * G + col, x, y, best);
+        for (int r = 1; r < G; r++) {
+            if (best[0] <= edge * edge)
+                break;
+            // the ring of cells at Chebyshev distance r, clipped to the grid
+            int row0 = row - r, row1 = row + r;
+            int col0 = Math.max(col - r, 0), col1 = Math.min(col + r, G - 1);
+            for (int c = col0; c <= col1; c++) {
+                if (row0 >= 0) scan(row0 * G + c, x, y, best);
+                if (row1 < G)  scan(row1 * G + c, x, y, best);
+            }
+            for (int rr = Math.max(row0 + 1, 0);
+                 rr <= Math.min(row1 - 1, G - 1); rr++) {
+                if (col - r >= 0) scan(rr * G + col - r, x, y, best);
+                if (col + r < G)  scan(rr * G + col + r, x, y, best);
+            }
+            edge += w;
+        }
+        return new Point2D(best[1], best[2]);
+    }
+
+    // update the champion with the points of cell c
+    private void scan(int c, double x, double y, double[] best) {
+        double[] xs = cellX[c], ys = cellY[c];
+        for (int i = 0; i < cellN[c]; i++) {
+            double dx = xs[i] - x, dy = ys[i] - y;
+            double d = dx*dx + dy*dy;
+            if (d < best[0]) {
+                best[0] = d;
+                best[1] = xs[i];
+                best[2] = ys[i];
+            }
+        }
+    }
+
+    // compare build and query times with KdTree and PointSET on the
+    // points in a file; each is timed on a second run, after a first one
+    // has warmed up the JIT compiler
+    public static void main(String[] args) {
+        Point2D[] points = Point2DFile.readPoints(args[0]);
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        // PointSET scans every point per query
+        int slowQueries = Math.max(1, Math.min(queries,
+                                   (int) (1e8 / Math.max(1, points.length))));
+
+        Point2D[] q = new Point2D[queries];
+        RectHV[] rects = new RectHV[queries];
+        for (int i = 0; i < queries; i++) {
+            q[i] = new Point2D(StdRandom.uniform(), StdRandom.uniform());
+            double x = StdRandom.uniform(0.0, 0.99);
+            double y = StdRandom.uniform(0.0, 0.99);
+            rects[i] = new RectHV(x, y, x + 0.01, y + 0.01);
+        }
+
+        for (int run = 0; run < 2; run++) {
+            boolean report = run == 1;
+
+            Stopwatch timer = new Stopwatch();
+            GridPointSet grid = new GridPointSet();
+            for (Point2D p : points)
+                grid.insert(p);
+            double gridBuild = timer.elapsedTime();
+            timer = new Stopwatch();
+            KdTree kdt = new KdTree();
+            for (Point2D p : points)
+                kdt.insert(p);
+            double kdtBuild = timer.elapsedTime();
+            timer = new Stopwatch();
+            PointSET set = new PointSET();
+            for (Point2D p : points)
+                set.insert(p);
+            double setBuild = timer.elapsedTime();
+
+            Point2D[] expected = new Point2D[queries];
+            timer = new Stopwatch();
+            for (int i = 0; i < queries; i++)
+                expected[i] = kdt.nearest(q[i]);
+            double kdtNearest = timer.elapsedTime();
+            Point2D[] found = new Point2D[queries];
+            timer = new Stopwatch();
+            for (int i = 0; i < queries; i++)
+                found[i] = grid.nearest(q[i]);
+            double gridNearest = timer.elapsedTime();
+            timer = new Stopwatch();
+            for (int i = 0; i < slowQueries; i++)
+                set.nearest(q[i]);
+            double setNearest = timer.elapsedTime();
+            for (int i = 0; i < queries; i++)
+                if (found[i].distanceSquaredTo(q[i])
+                    != expected[i].distanceSquaredTo(q[i]))
+                    throw new IllegalStateException("Nearest points differ");
+
+            long kdtFound = 0, gridFound = 0, setFound = 0;
+            timer = new Stopwatch();
+            for (int i = 0; i < queries; i++)
+                for (Point2D p : kdt.range(rects[i]))
+                    kdtFound++;
+            double kdtRange = timer.elapsedTime();
+            timer = new Stopwatch();
+            for (int i = 0; i < queries; i++)
+                for (Point2D p : grid.range(rects[i]))
+                    gridFound++;
+            double gridRange = timer.elapsedTime();
+            timer = new Stopwatch();
+            for (int i = 0; i < slowQueries; i++)
+                for (Point2D p : set.range(rects[i]))
+                    setFound++;
+            double setRange = timer.elapsedTime();
+            if (kdtFound != gridFound || (slowQueries == queries
+                                          && setFound != gridFound))
+                throw new IllegalStateException("Range counts differ");
+
+            if (!report)
+                continue;
+            StdOut.printf("%d points, %d queries (%d for PointSET), "
+                          + "microseconds per operation\n",
+                          grid.size(), queries, slowQueries);
+            StdOut.printf("%-13s %9s %9s %9s\n", "", "insert", "nearest",
+                          "range");
+            StdOut.printf("%-13s %9.3f %9.3f %9.3f\n", "GridPointSet",
+                          1e6 * gridBuild / points.length,
+                          1e6 * gridNearest / queries,
+                          1e6 * gridRange / queries);
+            StdOut.printf("%-13s %9.3f %9.3f %9.3f\n", "KdTree",
+                          1e6 * kdtBuild / points.length,
+                          1e6 * kdtNearest / queries,
+                          1e6 * kdtRange / queries);
+            StdOut.printf("%-13s %9.3f %9.3f %9.3f\n", "PointSET",
+                          1e6 * setBuild / points.length,
+                          1e6 * setNearest / slowQueries,
+                          1e6 * setRange / slowQueries);
+        }
+    }
+}
@@ -3,13 +3,49 @@
  * y-coordinates between 0 and 1) using a 2d-tree to support efficient 
  * range search (finds all of the points contained in a query rectangle) 
  * and nearest neighbor search (finds a closest point to a query point). 
+ * Other bounds can be given to the constructor; the rectangles of the
+ * nodes split the bounds, so points outside them are rejected. See
+ * KdTreeND for more than two dimensions.
+ *
+ * A tree can also be bulk-loaded from an array of points: each subtree
+ * is rooted at the median of its points along the splitting coordinate,
+ * found by quickselect, so the depth is O(log N) whatever the order of
+ * the input. Large inputs are built on a fork/join pool.
+ *
+ * Besides the nearest point, queries can ask for the k nearest points or
+ * all points within a radius. All of them skip a subtree once the squared
+ * distance to its rectangle is too large. Range search can also hand
+ * points to a PointVisitor instead of collecting them, or just count
+ * them, adding up whole subtrees that lie inside the query rectangle.
+ *
+ * Queries keep their state on the stack, so any number of threads can
+ * query a tree at once as long as none inserts. nearestAll() and
+ * rangeAll() answer batches of queries on a fork/join pool, in Morton
+ * (Z-order) order of the query points so that consecutive queries on a
+ * thread walk mostly the same nodes.
+ *
+ * A tree given a KdTreeMetrics records how many nodes each nearest,
+ * k-nearest and range query visits and prunes, how deep it goes and how
+ * long it takes; depthHistogram() shows how balanced the tree is.
  *
  ************************************************************************/
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
 public class KdTree {
     
+    private static final int PARALLEL = 1 << 14;  // smallest forked subtree
+    private static final int BATCH = 256;         // queries per batch task
+
+    // shared by bulk loads and batch queries; its threads are daemons
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
     private Node root; 
-    private RectHV qRect;
+    private final RectHV bounds;    // rectangle of the root
+    private KdTreeMetrics metrics;  // null unless queries are recorded
 
     private static class Node {
         
@@ -29,9 +65,174 @@ public class KdTree {
 
     // construct an empty set of points 
     public KdTree() {
+        this(new RectHV(0, 0, 1, 1));
+    }
+
+    // construct an empty set of points inside the given bounds
+    public KdTree(RectHV bounds) {
+        if (bounds == null)
+            throw new NullPointerException("Null bounds");
+        this.bounds = bounds;
         root = null;
     }
 
+    // construct a balanced tree of the given points (duplicates are
+    // ignored, as by insert), bounded by the unit square or, if some
+    // points lie outside it, the smallest rectangle holding it and them
+    public KdTree(Point2D[] points) {
+        Point2D[] a = points.clone();
+        for (Point2D p : a)
+            if (p == null)
+                throw new NullPointerException("Null point");
+        Arrays.sort(a);
+        int n = 0;
+        for (int i = 0; i < a.length; i++)
+            if (n == 0 || !a[i].equals(a[n-1]))
+                a[n++] = a[i];
+
+        bounds = boundingBox(a, n);
+        if (n < PARALLEL) {
+            root = build(a, 0, n, true, bounds);
+            return;
+        }
+        root = POOL.invoke(new Build(a, 0, n, true, bounds));
+    }
+
+    // smallest rectangle holding the unit square and a[0..n)
+    private static RectHV boundingBox(Point2D[] a, int n) {
+        double xmin = 0, xmax = 1, ymin = 0, ymax = 1;
+        for (int i = 0; i < n; i++) {
+            xmin = Math.min(xmin, a[i].x());
+            xmax = Math.max(xmax, a[i].x());
+            ymin = Math.min(ymin, a[i].y());
+            ymax = Math.max(ymax, a[i].y());
+        }
+        return new RectHV(xmin, ymin, xmax, ymax);
+    }
+
+    // build a balanced subtree of a[lo..hi) in the given rectangle
+    private static Node build(Point2D[] a, int lo, int hi, 
+                              boolean compareByX, RectHV rect) {
+        if (lo >= hi)
+            return null;
+        int m = split(a, lo, hi, compareByX);
+        Node n = new Node(a[m], compareByX, rect, hi - lo);
+        if (lo < m)
+            n.lb = build(a, lo, m, !compareByX, 
+                         lower(rect, a[m], compareByX));
+        if (m+1 < hi)
+            n.rt = build(a, m+1, hi, !compareByX, 
+                         upper(rect, a[m], compareByX));
+        return n;
+    }
+
+    // builds the two subtrees of large nodes as parallel tasks
+    private static class Build extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+        private final Point2D[] a;
+        private final int lo, hi;
+        private final boolean compareByX;
+        private final RectHV rect;
+
+        Build(Point2D[] a, int lo, int hi, boolean compareByX, RectHV rect) {
+            this.a = a;
+            this.lo = lo;
+            this.hi = hi;
+            this.compareByX = compareByX;
+            this.rect = rect;
+        }
+
+        protected Node compute() {
+            if (hi - lo < PARALLEL)
+                return build(a, lo, hi, compareByX, rect);
+            int m = split(a, lo, hi, compareByX);
+            Node n = new Node(a[m], compareByX, rect, hi - lo);
+            Build left = new Build(a, lo, m, !compareByX, 
+                                   lower(rect, a[m], compareByX));
+            left.fork();
+            n.rt = new Build(a, m+1, hi, !compareByX, 
+                             upper(rect, a[m], compareByX)).compute();
+            n.lb = left.join();
+            return n;
+        }
+    }
+
+    // rearrange a[lo..hi) around a median m along the splitting coordinate
+    // so that, as insert() does, a[lo..m) are smaller and a[m+1..hi) are
+    // no smaller than a[m]; returns m
+    private static int split(Point2D[] a, int lo, int hi, 
+                             boolean compareByX) {
+        int k = lo + (hi - lo) / 2;
+        select(a, lo, hi - 1, k, compareByX);
+        // points equal to the median along the coordinate go right of it
+        double v = key(a[k], compareByX);
+        int m = lo;
+        for (int i = lo; i < k; i++)
+            if (key(a[i], compareByX) < v)
+                exch(a, m++, i);
+        exch(a, m, k);
+        return m;
+    }
+
+    // quickselect: put the k-th smallest of a[lo..hi] at a[k], with no
+    // larger keys before it and no smaller keys after it
+    private static void select(Point2D[] a, int lo, int hi, int k, 
+                               boolean compareByX) {
+        while (hi > lo) {
+            // median of three as the partitioning item, moved to a[lo]
+            int mid = lo + (hi - lo) / 2;
+            if (key(a[mid], compareByX) < key(a[lo], compareByX)) 
+                exch(a, mid, lo);
+            if (key(a[hi], compareByX) < key(a[lo], compareByX)) 
+                exch(a, hi, lo);
+            if (key(a[hi], compareByX) < key(a[mid], compareByX)) 
+                exch(a, hi, mid);
+            exch(a, lo, mid);
+
+            double v = key(a[lo], compareByX);
+            int i = lo, j = hi + 1;
+            while (true) {
+                while (key(a[++i], compareByX) < v)
+                    if (i == hi) break;
+                while (v < key(a[--j], compareByX))
+                    if (j == lo) break;
+                if (i >= j) break;
+                exch(a, i, j);
+            }
+            exch(a, lo, j);
+
+            if      (j > k) hi = j - 1;
+            else if (j < k) lo = j + 1;
+            else            return;
+        }
+    }
+
+    private static double key(Point2D p, boolean compareByX) {
+        return compareByX ? p.x() : p.y();
+    }
+
+    private static void exch(Point2D[] a, int i, int j) {
+        Point2D t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    // the part of rect left of (below) the splitting line through p
+    private static RectHV lower(RectHV rect, Point2D p, boolean compareByX) {
+        if (compareByX)
+            return new RectHV(rect.xmin(), rect.ymin(), p.x(), rect.ymax());
+        else
+            return new RectHV(rect.xmin(), rect.ymin(), rect.xmax(), p.y());
+    }
+
+    // the part of rect right of (above) the splitting line through p
+    private static RectHV upper(RectHV rect, Point2D p, boolean compareByX) {
+        if (compareByX)
+            return new RectHV(p.x(), rect.ymin(), rect.xmax(), rect.ymax());
+        else
+            return new RectHV(rect.xmin(), p.y(), rect.xmax(), rect.ymax());
+    }
+
     // is the set empty?     
     public boolean isEmpty() {
         return size() == 0;
@@ -50,6 +251,8 @@ public class KdTree {
 
     // add the point to the set (if it is not already in the set)    
     public void insert(Point2D p) {
+        if (!bounds.contains(p))
+            throw new IllegalArgumentException(p + " is outside " + bounds);
         root = insert(root, true, null, -2, p); // -2 because no parent
     }
 
@@ -58,7 +261,7 @@ public class KdTree {
         if (r == null) {
             RectHV rect;
             if (parent == null)
-                rect = new RectHV(0, 0, 1, 1);
+                rect = bounds;
             else if (parent.compareByX) {
                 if (cmp < 0)
                     rect = new RectHV(parent.rect.xmin(), parent.rect.ymin(), 
@@ -141,93 +344,413 @@ public class KdTree {
         
         StdDraw.setPenRadius();
         StdDraw.setPenColor();
-        StdDraw.line(0,  0,  0,  1);
-        StdDraw.line(0,  1,  1,  1);
-        StdDraw.line(1,  1,  1,  0);
-        StdDraw.line(1,  0,  0,  0);
+        double x0 = bounds.xmin(), y0 = bounds.ymin();
+        double x1 = bounds.xmax(), y1 = bounds.ymax();
+        StdDraw.line(x0, y0, x0, y1);
+        StdDraw.line(x0, y1, x1, y1);
+        StdDraw.line(x1, y1, x1, y0);
+        StdDraw.line(x1, y0, x0, y0);
+    }
+
+    // record the queries of this tree in the given metrics from now on;
+    // null stops recording. Set before the tree is shared between threads
+    public void setMetrics(KdTreeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // metrics recorded by the queries; null if none are
+    public KdTreeMetrics metrics() {
+        return metrics;
+    }
+
+    // number of nodes at each depth of the tree, the root at depth 0
+    public int[] depthHistogram() {
+        int[] count = new int[0];
+        Queue<Node> level = new Queue<Node>();
+        if (root != null)
+            level.enqueue(root);
+        for (int d = 0; !level.isEmpty(); d++) {
+            count = Arrays.copyOf(count, d + 1);
+            Queue<Node> next = new Queue<Node>();
+            for (Node n : level) {
+                count[d]++;
+                if (n.lb != null) next.enqueue(n.lb);
+                if (n.rt != null) next.enqueue(n.rt);
+            }
+            level = next;
+        }
+        return count;
     }
 
     // all points that are inside the rectangle
     public Iterable<Point2D> range(RectHV rect) {
-        qRect = rect;
-        Queue<Point2D> pointsInRect = new Queue<Point2D>();
-        range(root, true, pointsInRect);
+        final Queue<Point2D> pointsInRect = new Queue<Point2D>();
+        range(rect, new PointVisitor() {
+            public boolean visit(Point2D p) {
+                pointsInRect.enqueue(p);
+                return true;
+            }
+        });
         return pointsInRect;
     }
+
+    // hand each point inside the rectangle to visitor until it returns
+    // false; returns false if the search was stopped that way
+    public boolean range(RectHV rect, PointVisitor visitor) {
+        KdTreeMetrics m = metrics;
+        if (m == null)
+            return range(root, rect, visitor, 0, null);
+        KdTreeMetrics.Trace t = m.start("range");
+        boolean completed = range(root, rect, visitor, 0, t);
+        m.finish(t);
+        return completed;
+    }
     
-    private void range(Node n, boolean compareByX, 
-                       Queue<Point2D> pointsInRect) {
+    // t, if not null, counts the nodes visited and subtrees pruned
+    private boolean range(Node n, RectHV qRect, PointVisitor visitor,
+                          int depth, KdTreeMetrics.Trace t) {
         if (n == null) 
-            return;
-        if (compareByX) {
-            double xLine = n.p.x();
-            if (qRect.xmax() < xLine)
-                range(n.lb, false, pointsInRect);
-            else if (qRect.xmin() > xLine)
-                range(n.rt, false, pointsInRect); 
-            else {
-                if (qRect.contains(n.p))
-                    pointsInRect.enqueue(n.p);
-                range(n.lb, false, pointsInRect);
-                range(n.rt, false, pointsInRect);
-            }
+            return true;
+        if (t != null)
+            t.visit(depth);
+        if (qRect.contains(n.p) && !visitor.visit(n.p))
+            return false;
+        double line, min, max;
+        if (n.compareByX) {
+            line = n.p.x();
+            min = qRect.xmin();
+            max = qRect.xmax();
         } else {
-            double yLine = n.p.y();
-            if (qRect.ymax() < yLine)
-                range(n.lb, true, pointsInRect);
-            else if (qRect.ymin() > yLine)
-                range(n.rt, true, pointsInRect);
-            else {
-                if (qRect.contains(n.p))
-                    pointsInRect.enqueue(n.p);
-                range(n.lb, true, pointsInRect);
-                range(n.rt, true, pointsInRect);
-            }
+            line = n.p.y();
+            min = qRect.ymin();
+            max = qRect.ymax();
         }
+        // smaller coordinates are in lb, the rest in rt
+        if (min < line) {
+            if (!range(n.lb, qRect, visitor, depth + 1, t))
+                return false;
+        } else if (t != null && n.lb != null) {
+            t.pruned++;
+        }
+        if (max >= line) {
+            if (!range(n.rt, qRect, visitor, depth + 1, t))
+                return false;
+        } else if (t != null && n.rt != null) {
+            t.pruned++;
+        }
+        return true;
+    }
+
+    // number of points inside the rectangle; a subtree whose rectangle
+    // lies inside it counts as its size N without being visited
+    public int rangeCount(RectHV rect) {
+        return rangeCount(root, rect);
+    }
+
+    private int rangeCount(Node n, RectHV qRect) {
+        if (n == null || !qRect.intersects(n.rect))
+            return 0;
+        if (qRect.xmin() <= n.rect.xmin() && n.rect.xmax() <= qRect.xmax()
+            && qRect.ymin() <= n.rect.ymin() && n.rect.ymax() <= qRect.ymax())
+            return n.N;
+        int count = qRect.contains(n.p) ? 1 : 0;
+        return count + rangeCount(n.lb, qRect) + rangeCount(n.rt, qRect);
     }
 
     // a nearest neighbor in the set to point p; null if the set is empty
     public Point2D nearest(Point2D p) {
         if (this.size() == 0) return null;
-        return nearest(root, p, root.p);
+        KdTreeMetrics m = metrics;
+        if (m == null)
+            return nearest(root, p, root.p, 0, null);
+        KdTreeMetrics.Trace t = m.start("nearest");
+        Point2D champion = nearest(root, p, root.p, 0, t);
+        m.finish(t);
+        return champion;
     }
     
-    private Point2D nearest(Node r, Point2D p, Point2D champion) {
-        Point2D newChamp = champion;
+    // the closer subtree first; a subtree is skipped when its rectangle
+    // is no closer than the champion, all in squared distances
+    private Point2D nearest(Node r, Point2D p, Point2D champion, int depth,
+                            KdTreeMetrics.Trace t) {
         if (r == null)
-            return newChamp;
-        if (r.p.distanceSquaredTo(p) < newChamp.distanceSquaredTo(p))
+            return champion;
+        double best = champion.distanceSquaredTo(p);
+        if (r.rect.distanceSquaredTo(p) >= best) {
+            if (t != null)
+                t.pruned++;
+            return champion;
+        }
+        if (t != null)
+            t.visit(depth);
+        Point2D newChamp = champion;
+        if (r.p.distanceSquaredTo(p) < best)
             newChamp = r.p;
-        if (r.compareByX) {
-            if (p.x() < r.p.x()) {
-                newChamp  = nearest(r.lb, p, newChamp);
-                if (newChamp.distanceTo(p) > r.p.x()-p.x())
-                    newChamp = nearest(r.rt, p, newChamp);
+        boolean lbFirst = r.compareByX ? p.x() < r.p.x() : p.y() < r.p.y();
+        if (lbFirst) {
+            newChamp = nearest(r.lb, p, newChamp, depth + 1, t);
+            newChamp = nearest(r.rt, p, newChamp, depth + 1, t);
+        } else {
+            newChamp = nearest(r.rt, p, newChamp, depth + 1, t);
+            newChamp = nearest(r.lb, p, newChamp, depth + 1, t);
+        }
+        return newChamp;
+    }
+
+    // the k points in the set nearest to p, nearest first (fewer if the
+    // set has fewer than k points)
+    public Iterable<Point2D> nearest(Point2D p, int k) {
+        if (p == null)
+            throw new NullPointerException("Null point");
+        if (k < 0)
+            throw new IllegalArgumentException("k must not be negative");
+        Neighbors best = new Neighbors(Math.min(k, size()));
+        KdTreeMetrics m = metrics;
+        KdTreeMetrics.Trace t = m == null ? null : m.start("k-nearest");
+        if (k > 0)
+            nearest(root, p, best, 0, t);
+        if (t != null)
+            m.finish(t);
+        Stack<Point2D> nearestFirst = new Stack<Point2D>();
+        while (!best.isEmpty())
+            nearestFirst.push(best.delMax());
+        return nearestFirst;
+    }
+
+    private void nearest(Node r, Point2D p, Neighbors best, int depth,
+                         KdTreeMetrics.Trace t) {
+        if (r == null)
+            return;
+        if (best.isFull() && r.rect.distanceSquaredTo(p) >= best.max()) {
+            if (t != null)
+                t.pruned++;
+            return;
+        }
+        if (t != null)
+            t.visit(depth);
+        best.offer(r.p, r.p.distanceSquaredTo(p));
+        boolean lbFirst = r.compareByX ? p.x() < r.p.x() : p.y() < r.p.y();
+        if (lbFirst) {
+            nearest(r.lb, p, best, depth + 1, t);
+            nearest(r.rt, p, best, depth + 1, t);
+        } else {
+            nearest(r.rt, p, best, depth + 1, t);
+            nearest(r.lb, p, best, depth + 1, t);
+        }
+    }
+
+    // bounded max-heap of points keyed by squared distance, keeping the
+    // closest capacity points offered
+    private static class Neighbors {
+        private final Point2D[] pt;         // heap in pt[1..n]
+        private final double[] dist;
+        private int n;
+
+        Neighbors(int capacity) {
+            pt = new Point2D[capacity + 1];
+            dist = new double[capacity + 1];
+        }
+
+        boolean isEmpty() {
+            return n == 0;
+        }
+
+        boolean isFull() {
+            return n == pt.length - 1;
+        }
+
+        // squared distance of the farthest point kept
+        double max() {
+            return dist[1];
+        }
+
+        void offer(Point2D p, double d) {
+            if (!isFull()) {
+                pt[++n] = p;
+                dist[n] = d;
+                swim(n);
+            } else if (n > 0 && d < dist[1]) {
+                pt[1] = p;
+                dist[1] = d;
+                sink(1);
             }
-            else {
-                newChamp  = nearest(r.rt, p, newChamp);
-                if (newChamp.distanceTo(p) > p.x()-r.p.x())
-                    newChamp = nearest(r.lb, p, newChamp);
+        }
+
+        Point2D delMax() {
+            Point2D max = pt[1];
+            exch(1, n);
+            pt[n--] = null;
+            sink(1);
+            return max;
+        }
+
+        private void swim(int k) {
+            while (k > 1 && dist[k/2] < dist[k]) {
+                exch(k, k/2);
+                k = k/2;
             }
         }
-        else {
-            if (p.y() < r.p.y()) {
-                newChamp  = nearest(r.lb, p, newChamp);
-                if (newChamp.distanceTo(p) > r.p.y()-p.y())
-                    newChamp = nearest(r.rt, p, newChamp);
-            } else {
-                newChamp  = nearest(r.rt, p, newChamp);
-                if (newChamp.distanceTo(p) > p.y()-r.p.y())
-                    newChamp = nearest(r.lb, p, newChamp);
+
+        private void sink(int k) {
+            while (2*k <= n) {
+                int j = 2*k;
+                if (j < n && dist[j] < dist[j+1]) j++;
+                if (dist[k] >= dist[j]) break;
+                exch(k, j);
+                k = j;
             }
         }
-        return newChamp;
+
+        private void exch(int i, int j) {
+            Point2D t = pt[i];
+            pt[i] = pt[j];
+            pt[j] = t;
+            double d = dist[i];
+            dist[i] = dist[j];
+            dist[j] = d;
+        }
+    }
+
+    // all points in the set within distance r of p
+    public Iterable<Point2D> withinRadius(Point2D p, double r) {
+        if (p == null)
+            throw new NullPointerException("Null point");
+        if (!(r >= 0))
+            throw new IllegalArgumentException("Radius must be >= 0");
+        Queue<Point2D> near = new Queue<Point2D>();
+        withinRadius(root, p, r * r, near);
+        return near;
+    }
+
+    private void withinRadius(Node n, Point2D p, double r2, 
+                              Queue<Point2D> near) {
+        if (n == null || n.rect.distanceSquaredTo(p) > r2)
+            return;
+        if (n.p.distanceSquaredTo(p) <= r2)
+            near.enqueue(n.p);
+        withinRadius(n.lb, p, r2, near);
+        withinRadius(n.rt, p, r2, near);
+    }
+    
+    // nearest neighbor of each query point, in the order of the queries
+    public Point2D[] nearestAll(final Point2D[] queries) {
+        final Point2D[] result = new Point2D[queries.length];
+        double[] xs = new double[queries.length];
+        double[] ys = new double[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            xs[i] = queries[i].x();
+            ys[i] = queries[i].y();
+        }
+        POOL.invoke(new Batch(zOrder(xs, ys), 0, queries.length,
+                              new Query() {
+            public void answer(int i) {
+                result[i] = nearest(queries[i]);
+            }
+        }));
+        return result;
+    }
+
+    // points inside each query rectangle, in the order of the queries
+    public Iterable<Point2D>[] rangeAll(final RectHV[] queries) {
+        final Iterable<Point2D>[] result = iterables(queries.length);
+        double[] xs = new double[queries.length];
+        double[] ys = new double[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            xs[i] = (queries[i].xmin() + queries[i].xmax()) / 2;
+            ys[i] = (queries[i].ymin() + queries[i].ymax()) / 2;
+        }
+        POOL.invoke(new Batch(zOrder(xs, ys), 0, queries.length,
+                              new Query() {
+            public void answer(int i) {
+                result[i] = range(queries[i]);
+            }
+        }));
+        return result;
+    }
+
+    // array for n results of range(); it only ever holds Iterable<Point2D>
+    @SuppressWarnings("unchecked")
+    private static Iterable<Point2D>[] iterables(int n) {
+        return (Iterable<Point2D>[]) new Iterable<?>[n];
+    }
+
+    // one query of a batch, answered into its slot of the results
+    private interface Query {
+        void answer(int i);
+    }
+
+    // answers queries order[lo..hi), splitting into tasks of BATCH queries
+    private static class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] order;
+        private final int lo, hi;
+        private final Query query;
+
+        Batch(int[] order, int lo, int hi, Query query) {
+            this.order = order;
+            this.lo = lo;
+            this.hi = hi;
+            this.query = query;
+        }
+
+        protected void compute() {
+            if (hi - lo <= BATCH) {
+                for (int k = lo; k < hi; k++)
+                    query.answer(order[k]);
+                return;
+            }
+            int mid = lo + (hi - lo) / 2;
+            invokeAll(new Batch(order, lo, mid, query),
+                      new Batch(order, mid, hi, query));
+        }
+    }
+
+    // indices of the points (xs[i], ys[i]) sorted by their Morton code, the
+    // bits of x and y interleaved, on a 2^16 by 2^16 grid over the bounds
+    private int[] zOrder(double[] xs, double[] ys) {
+        double w = bounds.xmax() - bounds.xmin();
+        double h = bounds.ymax() - bounds.ymin();
+        long[] keys = new long[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            long code = spread(cell((xs[i] - bounds.xmin()) / w))
+                     | (spread(cell((ys[i] - bounds.ymin()) / h)) << 1);
+            // the index takes 31 bits, so the 32-bit code stays above the
+            // sign bit and the keys sort in code order
+            keys[i] = (code << 31) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[xs.length];
+        for (int i = 0; i < xs.length; i++)
+            order[i] = (int) (keys[i] & Integer.MAX_VALUE);
+        return order;
+    }
+
+    // grid cell of v in [0, 1]
+    private static int cell(double v) {
+        if (!(v > 0)) return 0;
+        if (v >= 1)   return 0xFFFF;
+        return (int) (v * 0x10000);
+    }
+
+    // the 16 bits of v spread out to the even bits
+    private static long spread(long v) {
+        v = (v | (v << 8)) & 0x00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0FL;
+        v = (v | (v << 2)) & 0x33333333L;
+        v = (v | (v << 1)) & 0x55555555L;
+        return v;
     }
     
     public static void main(String[] args) {
-        KdTree kdt = new KdTree();
-        kdt.insert(new Point2D(0.5, 0.5));
-        kdt.insert(new Point2D(0.2, 0.2));
+        KdTree kdt;
+        if (args.length > 0) {
+            // points from a text or binary file (see Point2DFile)
+            kdt = new KdTree(Point2DFile.readPoints(args[0]));
+        } else {
+            kdt = new KdTree();
+            kdt.insert(new Point2D(0.5, 0.5));
+            kdt.insert(new Point2D(0.2, 0.2));
+        }
         kdt.draw();
     }
 }
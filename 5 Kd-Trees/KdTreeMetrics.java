@@ -0,0 +1,257 @@
+/*************************************************************************
+ * Query metrics for KdTree, recorded only for trees given a KdTreeMetrics
+ * with KdTree.setMetrics(); a tree without one pays a null check per node
+ * and nothing else.
+ *
+ * For each nearest, k-nearest and range query it counts the nodes whose
+ * point was examined, the subtrees skipped by pruning and the depth of the
+ * deepest node reached, and times the query. Queries are tallied into
+ * totals, a histogram of the depth reached and a histogram of latencies
+ * in buckets 1/8 of a power of two wide, from which latency percentiles
+ * are read to within 12.5%. Counters may be updated by many querying
+ * threads at once.
+ *
+ * Metrics are kept in a registry by name, so a tree's metrics can be
+ * looked up (or printed with all()) by code that never sees the tree.
+ * When Java Flight Recorder is running, every query is also reported as
+ * a KdTreeQueryEvent.
+ *
+ * Usage: java KdTreeMetrics input.txt [queries]
+ *        (compares a tree built by insertion with a bulk-loaded one)
+ *
+ ************************************************************************/
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class KdTreeMetrics {
+
+    private static final ConcurrentHashMap<String, KdTreeMetrics> REGISTRY =
+            new ConcurrentHashMap<String, KdTreeMetrics>();
+
+    private static final int DEPTHS = 64;       // deeper counts as 63
+    private static final int LATENCIES = 16 + 60 * 8;
+
+    private final String name;
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder visited = new LongAdder();
+    private final LongAdder pruned = new LongAdder();
+    private final AtomicLongArray depths = new AtomicLongArray(DEPTHS);
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCIES);
+
+    private KdTreeMetrics(String name) {
+        this.name = name;
+    }
+
+    // the metrics registered under name, registering new ones if none are
+    public static KdTreeMetrics get(String name) {
+        if (name == null)
+            throw new NullPointerException("Null name");
+        KdTreeMetrics m = REGISTRY.get(name);
+        if (m == null) {
+            KdTreeMetrics created = new KdTreeMetrics(name);
+            m = REGISTRY.putIfAbsent(name, created);
+            if (m == null)
+                m = created;
+        }
+        return m;
+    }
+
+    // drop the metrics registered under name from the registry
+    public static void remove(String name) {
+        REGISTRY.remove(name);
+    }
+
+    // all registered metrics, by name
+    public static Iterable<KdTreeMetrics> all() {
+        String[] names = REGISTRY.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        Queue<KdTreeMetrics> all = new Queue<KdTreeMetrics>();
+        for (String name : names) {
+            KdTreeMetrics m = REGISTRY.get(name);
+            if (m != null)
+                all.enqueue(m);
+        }
+        return all;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    // number of queries recorded
+    public long queries() {
+        return queries.sum();
+    }
+
+    // nodes examined by all queries
+    public long nodesVisited() {
+        return visited.sum();
+    }
+
+    // subtrees skipped by all queries
+    public long subtreesPruned() {
+        return pruned.sum();
+    }
+
+    public double visitedPerQuery() {
+        long n = queries();
+        return n == 0 ? 0.0 : (double) nodesVisited() / n;
+    }
+
+    // fraction of the subtrees reached that were skipped rather than
+    // visited
+    public double pruneRatio() {
+        long v = nodesVisited(), p = subtreesPruned();
+        return v + p == 0 ? 0.0 : (double) p / (v + p);
+    }
+
+    // number of queries by the depth of the deepest node they visited
+    // (the root is at depth 0), up to the deepest reached
+    public long[] depthHistogram() {
+        long[] h = new long[DEPTHS];
+        int n = 0;
+        for (int d = 0; d < DEPTHS; d++) {
+            h[d] = depths.get(d);
+            if (h[d] > 0)
+                n = d + 1;
+        }
+        return Arrays.copyOf(h, n);
+    }
+
+    // latency in nanoseconds that a fraction q of the queries took at
+    // most, rounded up to the end of its bucket; 0 if none were recorded
+    public long latencyPercentile(double q) {
+        if (!(q >= 0 && q <= 1))
+            throw new IllegalArgumentException("Fraction must be in [0, 1]");
+        long[] h = new long[LATENCIES];
+        long n = 0;
+        for (int i = 0; i < LATENCIES; i++) {
+            h[i] = latencies.get(i);
+            n += h[i];
+        }
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * n)), seen = 0;
+        for (int i = 0; i < LATENCIES; i++) {
+            seen += h[i];
+            if (seen >= rank)
+                return upper(i);
+        }
+        return upper(LATENCIES - 1);
+    }
+
+    // forget everything recorded so far
+    public void reset() {
+        queries.reset();
+        visited.reset();
+        pruned.reset();
+        for (int i = 0; i < DEPTHS; i++)
+            depths.set(i, 0);
+        for (int i = 0; i < LATENCIES; i++)
+            latencies.set(i, 0);
+    }
+
+    public String toString() {
+        return String.format("%s: %d queries, %.1f nodes visited per query, "
+                + "prune ratio %.3f, max depth %d, latency p50 %.3fus "
+                + "p99 %.3fus", name, queries(), visitedPerQuery(),
+                pruneRatio(), Math.max(0, depthHistogram().length - 1),
+                latencyPercentile(0.50) / 1e3, latencyPercentile(0.99) / 1e3);
+    }
+
+    // bucket of a latency: exact below 16ns, then 8 buckets per power of 2
+    private static int bucket(long nanos) {
+        if (nanos < 16)
+            return nanos < 0 ? 0 : (int) nanos;
+        int e = 63 - Long.numberOfLeadingZeros(nanos);  // 4 or more
+        int i = 16 + (e - 4) * 8 + (int) ((nanos >>> (e - 3)) & 7);
+        return Math.min(i, LATENCIES - 1);
+    }
+
+    // largest latency in bucket i
+    private static long upper(int i) {
+        if (i < 16)
+            return i;
+        int e = (i - 16) / 8 + 4;
+        long sub = (i - 16) % 8;
+        return ((8 + sub + 1) << (e - 3)) - 1;
+    }
+
+    // counters of one query, kept by the querying thread
+    static class Trace {
+        private final String kind;
+        private final long start;
+        private final KdTreeQueryEvent event;
+        int visited, pruned, depth;
+
+        private Trace(String kind) {
+            this.kind = kind;
+            // loading the event class starts up JFR, so only once it is
+            // running
+            if (jdk.jfr.FlightRecorder.isInitialized()) {
+                event = new KdTreeQueryEvent();
+                event.begin();
+            } else {
+                event = null;
+            }
+            start = System.nanoTime();
+        }
+
+        // count a node visited at depth d
+        void visit(int d) {
+            visited++;
+            if (d > depth)
+                depth = d;
+        }
+    }
+
+    // start recording a query of the given kind
+    Trace start(String kind) {
+        return new Trace(kind);
+    }
+
+    // record a query traced since start()
+    void finish(Trace t) {
+        long nanos = System.nanoTime() - t.start;
+        queries.increment();
+        visited.add(t.visited);
+        pruned.add(t.pruned);
+        depths.incrementAndGet(Math.min(t.depth, DEPTHS - 1));
+        latencies.incrementAndGet(bucket(nanos));
+        if (t.event != null && t.event.shouldCommit()) {
+            t.event.set(name, t.kind, t.visited, t.pruned, t.depth);
+            t.event.commit();
+        }
+    }
+
+    // query a tree built by inserting the points of a file in order, and
+    // one bulk-loaded from them, and print their metrics
+    public static void main(String[] args) {
+        Point2D[] points = Point2DFile.readPoints(args[0]);
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+        KdTree inserted = new KdTree();
+        for (Point2D p : points)
+            inserted.insert(p);
+        inserted.setMetrics(get("inserted"));
+        KdTree bulk = new KdTree(points);
+        bulk.setMetrics(get("bulk"));
+
+        for (KdTree kdt : new KdTree[] { inserted, bulk }) {
+            for (int i = 0; i < queries; i++) {
+                double x = StdRandom.uniform(), y = StdRandom.uniform();
+                kdt.nearest(new Point2D(x, y));
+                kdt.nearest(new Point2D(x, y), 8);
+                x = Math.min(x, 0.99);
+                y = Math.min(y, 0.99);
+                kdt.range(new RectHV(x, y, x + 0.01, y + 0.01));
+            }
+            StdOut.println(Arrays.toString(kdt.depthHistogram()));
+        }
+        for (KdTreeMetrics m : all())
+            StdOut.println(m);
+    }
+}
@@ -0,0 +1,477 @@
+/*************************************************************************
+ * Represents a set of points in k dimensions, each a double[] of k
+ * coordinates, using a k-d tree to support range search (finds all of
+ * the points in a query box) and nearest neighbor search (finds the
+ * closest points to a query point).
+ *
+ * Each node splits its cell on one axis at its point: smaller coordinates
+ * go left, the rest right. The axis is chosen by a SplitRule, either
+ * cycling through the axes by depth or splitting the widest side of the
+ * cell (of the points, when bulk-loading), which adapts to data that is
+ * spread unevenly across the axes.
+ *
+ * Cells are never stored. Nearest neighbor search keeps, per axis, the
+ * offset of the query from the current cell and updates the squared
+ * distance to the cell in O(1) when it crosses a splitting plane, so a
+ * subtree is pruned as soon as its cell is too far, in any dimension.
+ *
+ * The tree copies the arrays it is given and returns copies, so callers
+ * may reuse theirs.
+ *
+ * Usage: java KdTreeND k N [queries]   (random points, checked and timed)
+ *
+ ************************************************************************/
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+public class KdTreeND {
+
+    // how to choose the splitting axis of a node
+    public enum SplitRule { ROUND_ROBIN, MAX_SPREAD }
+
+    private final int k;
+    private final double[] lo, hi;          // bounds of the root cell
+    private final SplitRule rule;
+    private Node root;
+
+    private static class Node {
+        private final double[] p;
+        private final int axis;
+        private Node lb, rt;
+        private int N;
+
+        public Node(double[] p, int axis, int N) {
+            this.p = p;
+            this.axis = axis;
+            this.N = N;
+        }
+    }
+
+    // construct an empty set of points in k dimensions with no bounds
+    public KdTreeND(int k) {
+        this(fill(k, Double.NEGATIVE_INFINITY),
+             fill(k, Double.POSITIVE_INFINITY), SplitRule.ROUND_ROBIN);
+    }
+
+    // construct an empty set of points inside the box [lo, hi]
+    public KdTreeND(double[] lo, double[] hi, SplitRule rule) {
+        if (lo.length == 0 || lo.length != hi.length)
+            throw new IllegalArgumentException("Bounds must have the same "
+                    + "number of dimensions, at least 1");
+        for (int a = 0; a < lo.length; a++)
+            if (!(lo[a] <= hi[a]))
+                throw new IllegalArgumentException("Empty bounds on axis "
+                        + a);
+        if (rule == null)
+            throw new NullPointerException("Null split rule");
+        this.k = lo.length;
+        this.lo = lo.clone();
+        this.hi = hi.clone();
+        this.rule = rule;
+    }
+
+    // construct a balanced tree of the given points (duplicates are
+    // ignored, as by insert) with no bounds, so any point can be inserted
+    // later
+    public KdTreeND(double[][] points, SplitRule rule) {
+        this(fill(dimension(points), Double.NEGATIVE_INFINITY),
+             fill(dimension(points), Double.POSITIVE_INFINITY), rule);
+        double[][] a = new double[points.length][];
+        for (int i = 0; i < a.length; i++)
+            a[i] = points[i].clone();
+        Arrays.sort(a, LEXICOGRAPHIC);
+        int n = 0;
+        for (int i = 0; i < a.length; i++)
+            if (n == 0 || LEXICOGRAPHIC.compare(a[i], a[n-1]) != 0)
+                a[n++] = a[i];
+        root = build(a, 0, n, 0);
+    }
+
+    private static double[] fill(int k, double v) {
+        if (k < 1)
+            throw new IllegalArgumentException("Need at least 1 dimension");
+        double[] a = new double[k];
+        Arrays.fill(a, v);
+        return a;
+    }
+
+    // number of coordinates of the points, checking that all have as
+    // many as the first
+    private static int dimension(double[][] points) {
+        if (points.length == 0)
+            throw new IllegalArgumentException("Need at least one point "
+                    + "to find the dimension");
+        int k = points[0].length;
+        for (double[] p : points)
+            if (p.length != k)
+                throw new IllegalArgumentException("Points have "
+                        + k + " and " + p.length + " coordinates");
+        return k;
+    }
+
+    private static final Comparator<double[]> LEXICOGRAPHIC =
+        new Comparator<double[]>() {
+            public int compare(double[] p, double[] q) {
+                for (int a = 0; a < p.length; a++) {
+                    int c = Double.compare(p[a], q[a]);
+                    if (c != 0) return c;
+                }
+                return 0;
+            }
+        };
+
+    // balanced subtree of the distinct points a[from..to) at depth
+    private Node build(double[][] a, int from, int to, int depth) {
+        if (from >= to)
+            return null;
+        int axis = rule == SplitRule.ROUND_ROBIN ? depth % k
+                                                 : widest(a, from, to);
+        int m = split(a, from, to, axis);
+        Node n = new Node(a[m], axis, to - from);
+        n.lb = build(a, from, m, depth + 1);
+        n.rt = build(a, m + 1, to, depth + 1);
+        return n;
+    }
+
+    // axis along which the points a[from..to) are spread the most
+    private int widest(double[][] a, int from, int to) {
+        int best = 0;
+        double bestSpread = -1;
+        for (int axis = 0; axis < k; axis++) {
+            double min = a[from][axis], max = min;
+            for (int i = from + 1; i < to; i++) {
+                min = Math.min(min, a[i][axis]);
+                max = Math.max(max, a[i][axis]);
+            }
+            if (max - min > bestSpread) {
+                bestSpread = max - min;
+                best = axis;
+            }
+        }
+        return best;
+    }
+
+    // rearrange a[from..to) around a median m on the axis so that, as
+    // insert() does, a[from..m) are smaller and a[m+1..to) are no smaller
+    // than a[m]; returns m
+    private static int split(double[][] a, int from, int to, int axis) {
+        int k = from + (to - from) / 2;
+        select(a, from, to - 1, k, axis);
+        double v = a[k][axis];
+        int m = from;
+        for (int i = from; i < k; i++)
+            if (a[i][axis] < v)
+                exch(a, m++, i);
+        exch(a, m, k);
+        return m;
+    }
+
+    // quickselect: put the k-th smallest of a[lo..hi] on the axis at a[k]
+    private static void select(double[][] a, int lo, int hi, int k,
+                               int axis) {
+        while (hi > lo) {
+            int mid = lo + (hi - lo) / 2;
+            if (a[mid][axis] < a[lo][axis]) exch(a, mid, lo);
+            if (a[hi][axis]  < a[lo][axis]) exch(a, hi, lo);
+            if (a[hi][axis]  < a[mid][axis]) exch(a, hi, mid);
+            exch(a, lo, mid);
+
+            double v = a[lo][axis];
+            int i = lo, j = hi + 1;
+            while (true) {
+                while (a[++i][axis] < v)
+                    if (i == hi) break;
+                while (v < a[--j][axis])
+                    if (j == lo) break;
+                if (i >= j) break;
+                exch(a, i, j);
+            }
+            exch(a, lo, j);
+
+            if      (j > k) hi = j - 1;
+            else if (j < k) lo = j + 1;
+            else            return;
+        }
+    }
+
+    private static void exch(double[][] a, int i, int j) {
+        double[] t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    // number of dimensions
+    public int dimension() {
+        return k;
+    }
+
+    // is the set empty?
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // number of points in the set
+    public int size() {
+        return root == null ? 0 : root.N;
+    }
+
+    private void check(double[] p) {
+        if (p.length != k)
+            throw new IllegalArgumentException("Point has " + p.length
+                    + " coordinates, not " + k);
+    }
+
+    // add the point to the set (if it is not already in the set)
+    public void insert(double[] p) {
+        check(p);
+        for (int a = 0; a < k; a++)
+            if (!(p[a] >= lo[a] && p[a] <= hi[a]))
+                throw new IllegalArgumentException("Point is outside the "
+                        + "bounds on axis " + a);
+        if (contains(p))
+            return;
+        p = p.clone();
+        if (root == null) {
+            root = new Node(p, 0, 1);
+            return;
+        }
+        // the cell of the new leaf, for MAX_SPREAD
+        double[] cellLo = lo.clone(), cellHi = hi.clone();
+        Node n = root;
+        while (true) {
+            n.N++;
+            int a = n.axis;
+            boolean less = p[a] < n.p[a];
+            if (less) cellHi[a] = n.p[a];
+            else      cellLo[a] = n.p[a];
+            Node next = less ? n.lb : n.rt;
+            if (next == null) {
+                Node leaf = new Node(p, axis(n.axis, cellLo, cellHi), 1);
+                if (less) n.lb = leaf;
+                else      n.rt = leaf;
+                return;
+            }
+            n = next;
+        }
+    }
+
+    // axis of a new node below a node splitting on parent, in the given
+    // cell: the next axis, or the widest side of the cell (ties go to the
+    // axes after parent first)
+    private int axis(int parent, double[] cellLo, double[] cellHi) {
+        int next = (parent + 1) % k;
+        if (rule == SplitRule.ROUND_ROBIN)
+            return next;
+        int best = next;
+        for (int i = 1; i < k; i++) {
+            int a = (next + i) % k;
+            if (cellHi[a] - cellLo[a] > cellHi[best] - cellLo[best])
+                best = a;
+        }
+        return best;
+    }
+
+    // does the set contain point p?
+    public boolean contains(double[] p) {
+        check(p);
+        Node n = root;
+        while (n != null) {
+            if (Arrays.equals(n.p, p))
+                return true;
+            n = p[n.axis] < n.p[n.axis] ? n.lb : n.rt;
+        }
+        return false;
+    }
+
+    // all points inside the box [min, max]
+    public Iterable<double[]> range(double[] min, double[] max) {
+        check(min);
+        check(max);
+        Queue<double[]> inside = new Queue<double[]>();
+        range(root, min, max, inside);
+        return inside;
+    }
+
+    private void range(Node n, double[] min, double[] max,
+                       Queue<double[]> inside) {
+        if (n == null)
+            return;
+        boolean in = true;
+        for (int a = 0; a < k && in; a++)
+            in = n.p[a] >= min[a] && n.p[a] <= max[a];
+        if (in)
+            inside.enqueue(n.p.clone());
+        if (min[n.axis] < n.p[n.axis])
+            range(n.lb, min, max, inside);
+        if (max[n.axis] >= n.p[n.axis])
+            range(n.rt, min, max, inside);
+    }
+
+    // a nearest neighbor in the set to point p; null if the set is empty
+    public double[] nearest(double[] p) {
+        for (double[] q : nearest(p, 1))
+            return q;
+        return null;
+    }
+
+    // the m points in the set nearest to p, nearest first (fewer if the
+    // set has fewer than m points)
+    public Iterable<double[]> nearest(double[] p, int m) {
+        check(p);
+        if (m < 0)
+            throw new IllegalArgumentException("m must not be negative");
+        Neighbors best = new Neighbors(Math.min(m, size()));
+        if (m > 0)
+            nearest(root, p, 0.0, new double[k], best);
+        Stack<double[]> nearestFirst = new Stack<double[]>();
+        while (!best.isEmpty())
+            nearestFirst.push(best.delMax().clone());
+        return nearestFirst;
+    }
+
+    // search node n, whose cell is at squared distance rd from p, off[a]
+    // being the offset of p from the cell on axis a
+    private void nearest(Node n, double[] p, double rd, double[] off,
+                         Neighbors best) {
+        if (n == null || (best.isFull() && rd >= best.max()))
+            return;
+        double d = 0.0;
+        for (int a = 0; a < k; a++) {
+            double t = n.p[a] - p[a];
+            d += t * t;
+        }
+        best.offer(n.p, d);
+
+        int a = n.axis;
+        double diff = p[a] - n.p[a];
+        Node near = diff < 0 ? n.lb : n.rt;
+        Node far  = diff < 0 ? n.rt : n.lb;
+        nearest(near, p, rd, off, best);
+        // the far cell lies beyond the splitting plane
+        double old = off[a];
+        double farRd = rd - old * old + diff * diff;
+        if (!best.isFull() || farRd < best.max()) {
+            off[a] = diff;
+            nearest(far, p, farRd, off, best);
+            off[a] = old;
+        }
+    }
+
+    // bounded max-heap of points keyed by squared distance, keeping the
+    // closest capacity points offered
+    private static class Neighbors {
+        private final double[][] pt;        // heap in pt[1..n]
+        private final double[] dist;
+        private int n;
+
+        Neighbors(int capacity) {
+            pt = new double[capacity + 1][];
+            dist = new double[capacity + 1];
+        }
+
+        boolean isEmpty() {
+            return n == 0;
+        }
+
+        boolean isFull() {
+            return n == pt.length - 1;
+        }
+
+        // squared distance of the farthest point kept
+        double max() {
+            return dist[1];
+        }
+
+        void offer(double[] p, double d) {
+            if (!isFull()) {
+                pt[++n] = p;
+                dist[n] = d;
+                swim(n);
+            } else if (n > 0 && d < dist[1]) {
+                pt[1] = p;
+                dist[1] = d;
+                sink(1);
+            }
+        }
+
+        double[] delMax() {
+            double[] max = pt[1];
+            exch(1, n);
+            pt[n--] = null;
+            sink(1);
+            return max;
+        }
+
+        private void swim(int k) {
+            while (k > 1 && dist[k/2] < dist[k]) {
+                exch(k, k/2);
+                k = k/2;
+            }
+        }
+
+        private void sink(int k) {
+            while (2*k <= n) {
+                int j = 2*k;
+                if (j < n && dist[j] < dist[j+1]) j++;
+                if (dist[k] >= dist[j]) break;
+                exch(k, j);
+                k = j;
+            }
+        }
+
+        private void exch(int i, int j) {
+            double[] t = pt[i];
+            pt[i] = pt[j];
+            pt[j] = t;
+            double d = dist[i];
+            dist[i] = dist[j];
+            dist[j] = d;
+        }
+    }
+
+    // build trees of random points with both split rules, check nearest
+    // against brute force and time it
+    public static void main(String[] args) {
+        int k = Integer.parseInt(args[0]);
+        int N = Integer.parseInt(args[1]);
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        Random random = new Random(0);
+        double[][] points = new double[N][k];
+        for (double[] p : points)
+            for (int a = 0; a < k; a++)     // later axes spread less
+                p[a] = random.nextDouble() / (a + 1);
+        double[][] q = new double[queries][k];
+        for (double[] p : q)
+            for (int a = 0; a < k; a++)
+                p[a] = random.nextDouble() / (a + 1);
+
+        for (SplitRule rule : SplitRule.values()) {
+            Stopwatch timer = new Stopwatch();
+            KdTreeND tree = new KdTreeND(points, rule);
+            double build = timer.elapsedTime();
+            timer = new Stopwatch();
+            double[][] found = new double[queries][];
+            for (int i = 0; i < queries; i++)
+                found[i] = tree.nearest(q[i]);
+            double time = timer.elapsedTime();
+            StdOut.printf("%-11s build %7.3fs  %d nearest %7.3fs\n", rule,
+                          build, queries, time);
+            for (int i = 0; i < Math.min(queries, 100); i++) {
+                double best = Double.POSITIVE_INFINITY;
+                for (double[] p : points)
+                    best = Math.min(best, distanceSquared(p, q[i]));
+                if (distanceSquared(found[i], q[i]) != best)
+                    throw new IllegalStateException("Wrong nearest point");
+            }
+        }
+    }
+
+    private static double distanceSquared(double[] p, double[] q) {
+        double d = 0.0;
+        for (int a = 0; a < p.length; a++)
+            d += (p[a] - q[a]) * (p[a] - q[a]);
+        return d;
+    }
+}
@@ -0,0 +1,51 @@
+/*************************************************************************
+ * Java Flight Recorder event committed for every query of a KdTree that
+ * records KdTreeMetrics, while a recording has the event enabled, for
+ * example with
+ *
+ *     java -XX:StartFlightRecording:filename=kdtree.jfr KdTreeMetrics ...
+ *
+ * Its duration is the time of the query. Shown under "Kd-Trees" by
+ * jfr print or JDK Mission Control.
+ *
+ ************************************************************************/
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("kdtree.Query")
+@Label("Kd-Tree Query")
+@Category("Kd-Trees")
+@Description("One query of a KdTree with metrics")
+class KdTreeQueryEvent extends jdk.jfr.Event {
+
+    @Label("Metrics")
+    @Description("Name of the KdTreeMetrics of the tree")
+    String metrics;
+
+    @Label("Kind")
+    @Description("nearest, k-nearest or range")
+    String kind;
+
+    @Label("Nodes Visited")
+    int nodesVisited;
+
+    @Label("Subtrees Pruned")
+    int subtreesPruned;
+
+    @Label("Depth")
+    @Description("Depth of the deepest node visited")
+    int depth;
+
+    // copy the counters of a query
+    void set(String metrics, String kind, int nodesVisited,
+             int subtreesPruned, int depth) {
+        this.metrics = metrics;
+        this.kind = kind;
+        this.nodesVisited = nodesVisited;
+        this.subtreesPruned = subtreesPruned;
+        this.depth = depth;
+    }
+}
@@ -0,0 +1,260 @@
+/*************************************************************************
+ * Fast loader for the point files read by the KdTree and PointSET clients.
+ *
+ * Text files (pairs of x- and y-coordinates until end of file) are
+ * memory-mapped and scanned by hand instead of token by token through In.
+ * Binary files use the same packed format as PointFile in the collinear
+ * points assignment, read with FileChannel.map:
+ *
+ *     int    magic   'P' 'T' 'S' '1'
+ *     int    type    0 = int coordinates, 1 = double coordinates
+ *     int    N       number of points
+ *     N x-coordinates, then N y-coordinates (big-endian)
+ *
+ * Usage: java Point2DFile input.txt output.bin   (converts text to binary)
+ *
+ ************************************************************************/
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class Point2DFile {
+
+    public static final int MAGIC = 0x50545331;     // "PTS1"
+    public static final int TYPE_INT = 0;
+    public static final int TYPE_DOUBLE = 1;
+
+    private static final int HEADER_BYTES = 12;
+    private static final int MAX_MAP = 1 << 30;     // bytes per mapping
+
+    // powers of ten that are exactly representable as doubles
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i-1] * 10;
+    }
+
+    // read the points in the file, text or binary
+    public static Point2D[] readPoints(String filename) {
+        double[][] xy = readCoordinates(filename);
+        Point2D[] pts = new Point2D[xy[0].length];
+        for (int i = 0; i < pts.length; i++)
+            pts[i] = new Point2D(xy[0][i], xy[1][i]);
+        return pts;
+    }
+
+    // read the coordinates in the file as { xs, ys }, text or binary
+    public static double[][] readCoordinates(String filename) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(filename, "r");
+            FileChannel ch = file.getChannel();
+            if (ch.size() >= HEADER_BYTES
+                    && ch.map(FileChannel.MapMode.READ_ONLY, 0, 4)
+                         .getInt() == MAGIC)
+                return readBinary(ch);
+            return readText(ch);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + filename, e);
+        } finally {
+            close(file);
+        }
+    }
+
+    // write the coordinates to a binary point file
+    public static void writeBinary(String filename, double[] xs, double[] ys) {
+        if (xs.length != ys.length)
+            throw new IllegalArgumentException("Coordinate arrays differ "
+                    + "in length");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(filename), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(TYPE_DOUBLE);
+            out.writeInt(xs.length);
+            for (int i = 0; i < xs.length; i++)
+                out.writeDouble(xs[i]);
+            for (int i = 0; i < ys.length; i++)
+                out.writeDouble(ys[i]);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + filename,
+                    e);
+        } finally {
+            close(out);
+        }
+    }
+
+    private static double[][] readBinary(FileChannel ch) throws IOException {
+        MappedByteBuffer header =
+                ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        header.getInt();
+        int type = header.getInt();
+        int n = header.getInt();
+        if (type != TYPE_INT && type != TYPE_DOUBLE)
+            throw new IllegalArgumentException("Unknown coordinate type "
+                    + type);
+        int width = type == TYPE_INT ? 4 : 8;
+        if (n < 0 || ch.size() < HEADER_BYTES + 2L * width * n)
+            throw new IllegalArgumentException("Truncated point file");
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        readArray(ch, HEADER_BYTES, type, xs);
+        readArray(ch, HEADER_BYTES + (long) width * n, type, ys);
+        return new double[][] { xs, ys };
+    }
+
+    // bulk copy a packed int or double array starting at byte offset pos
+    private static void readArray(FileChannel ch, long pos, int type,
+                                  double[] dst) throws IOException {
+        int width = type == TYPE_INT ? 4 : 8;
+        int done = 0;
+        while (done < dst.length) {
+            int count = Math.min(dst.length - done, MAX_MAP / width);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY,
+                    pos + (long) width * done, (long) width * count);
+            if (type == TYPE_DOUBLE)
+                buf.asDoubleBuffer().get(dst, done, count);
+            else
+                for (int i = 0; i < count; i++)
+                    dst[done + i] = buf.getInt();
+            done += count;
+        }
+    }
+
+    private static double[][] readText(FileChannel ch) throws IOException {
+        Scanner in = new Scanner(ch);
+        double[] xs = new double[1024];
+        double[] ys = new double[1024];
+        int n = 0;
+        while (in.hasNext()) {
+            if (n == xs.length) {
+                xs = java.util.Arrays.copyOf(xs, 2*n);
+                ys = java.util.Arrays.copyOf(ys, 2*n);
+            }
+            xs[n] = in.nextDouble();
+            ys[n] = in.nextDouble();
+            n++;
+        }
+        return new double[][] { java.util.Arrays.copyOf(xs, n),
+                                 java.util.Arrays.copyOf(ys, n) };
+    }
+
+    private static void close(java.io.Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException e) {
+            // nothing useful to do, the data has already been read
+        }
+    }
+
+    // hand-written number scanner over a (windowed) memory-mapped file
+    private static class Scanner {
+
+        private final FileChannel ch;
+        private final long size;
+        private final StringBuilder token = new StringBuilder();
+        private MappedByteBuffer buf;
+        private long base;
+        private int peek = -2;          // -2 means nothing buffered
+
+        public Scanner(FileChannel ch) throws IOException {
+            this.ch = ch;
+            this.size = ch.size();
+            map(0);
+        }
+
+        private void map(long pos) throws IOException {
+            base = pos;
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, pos,
+                    Math.min(MAX_MAP, size - pos));
+        }
+
+        // next byte, or -1 at end of file
+        private int read() throws IOException {
+            if (peek != -2) {
+                int c = peek;
+                peek = -2;
+                return c;
+            }
+            if (!buf.hasRemaining()) {
+                long pos = base + buf.position();
+                if (pos >= size) return -1;
+                map(pos);
+            }
+            return buf.get() & 0xFF;
+        }
+
+        private static boolean isSpace(int c) {
+            return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+        }
+
+        // is there another token before end of file?
+        public boolean hasNext() throws IOException {
+            int c = read();
+            while (isSpace(c))
+                c = read();
+            peek = c;
+            return c != -1;
+        }
+
+        // parses [+-]digits[.digits][(e|E)[+-]digits]; short mantissas are
+        // converted exactly here, anything longer goes to Double.parseDouble
+        public double nextDouble() throws IOException {
+            token.setLength(0);
+            int c = read();
+            while (isSpace(c))
+                c = read();
+            if (c == -1)
+                throw new IllegalArgumentException("Unexpected end of file");
+            while (c != -1 && !isSpace(c)) {
+                token.append((char) c);
+                c = read();
+            }
+
+            int i = 0;
+            int len = token.length();
+            boolean negative = false;
+            if (token.charAt(0) == '-' || token.charAt(0) == '+') {
+                negative = token.charAt(0) == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int scale = 0;
+            boolean seen = false;
+            boolean fraction = false;
+            for (; i < len; i++) {
+                char d = token.charAt(i);
+                if (d >= '0' && d <= '9') {
+                    mantissa = mantissa * 10 + (d - '0');
+                    seen = true;
+                    if (mantissa != 0) digits++;
+                    if (fraction) scale++;
+                } else if (d == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    break;
+                }
+            }
+            if (i < len || !seen || digits > 15 || scale >= POW10.length)
+                return Double.parseDouble(token.toString());
+            double value = mantissa / POW10[scale];
+            return negative ? -value : value;
+        }
+    }
+
+    // convert a text point file to the binary format
+    public static void main(String[] args) {
+        double[][] xy = readCoordinates(args[0]);
+        writeBinary(args[1], xy[0], xy[1]);
+        System.out.println("Wrote " + xy[0].length + " points to " + args[1]);
+    }
+}
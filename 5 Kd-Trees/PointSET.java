@@ -1,3 +1,4 @@
+import java.util.SortedSet;
 import java.util.TreeSet;
 
 /*************************************************************************
@@ -5,6 +6,8 @@ import java.util.TreeSet;
  * y-coordinates between 0 and 1) using a tree set for brute-force 
  * range search (finds all of the points contained in a query rectangle) 
  * and nearest neighbor search (finds a closest point to a query point). 
+ * Range search only scans the points whose y-coordinate is in range, as
+ * the tree set orders points by y first.
  * 
  ************************************************************************/
 
@@ -50,12 +53,43 @@ public class PointSET {
     
     // all points that are inside the rectangle
     public Iterable<Point2D> range(RectHV rect) {
-        TreeSet<Point2D> contained = new TreeSet<Point2D>(); 
-        for (Point2D p : ts)
-            if (rect.contains(p))
-                contained.add(p);
+        final Queue<Point2D> contained = new Queue<Point2D>();
+        range(rect, new PointVisitor() {
+            public boolean visit(Point2D p) {
+                contained.enqueue(p);
+                return true;
+            }
+        });
         return contained;
     }
+
+    // hand each point inside the rectangle to visitor until it returns
+    // false; returns false if the search was stopped that way
+    public boolean range(RectHV rect, PointVisitor visitor) {
+        for (Point2D p : band(rect))
+            if (p.x() >= rect.xmin() && p.x() <= rect.xmax()
+                && !visitor.visit(p))
+                return false;
+        return true;
+    }
+
+    // number of points inside the rectangle
+    public int rangeCount(RectHV rect) {
+        int count = 0;
+        for (Point2D p : band(rect))
+            if (p.x() >= rect.xmin() && p.x() <= rect.xmax())
+                count++;
+        return count;
+    }
+
+    // view of the points from the lower left to the upper right corner of
+    // the rectangle; the set is ordered by y, then x, so this is a
+    // contiguous part of it that holds every point inside the rectangle
+    private SortedSet<Point2D> band(RectHV rect) {
+        Point2D lo = new Point2D(rect.xmin(), rect.ymin());
+        Point2D hi = new Point2D(rect.xmax(), rect.ymax());
+        return ts.subSet(lo, true, hi, true);
+    }
     
     // a nearest neighbor in the set to point p; null if the set is empty
     public Point2D nearest(Point2D p) {
@@ -0,0 +1,11 @@
+/*************************************************************************
+ * Callback for the range searches of KdTree and PointSET that hand each
+ * point to the caller instead of collecting them in a new collection.
+ *
+ ************************************************************************/
+
+public interface PointVisitor {
+
+    // handle point p; return false to stop the search
+    boolean visit(Point2D p);
+}